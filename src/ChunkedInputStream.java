@@ -0,0 +1,126 @@
+// Copyright (C) 2026 YesLogic Pty. Ltd.
+// All rights reserved.
+
+package com.princexml;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * ChunkedInputStream reads data written by a ChunkedOutputStream. It
+ * returns end of file once the zero length end marker has been read,
+ * leaving the underlying InputStream positioned after it.
+ */
+class ChunkedInputStream extends InputStream
+{
+    private DataInputStream mInput;
+    private int mRemaining;
+    private boolean mFinished;
+
+    /**
+     * Constructor for ChunkedInputStream.
+     * @param input The InputStream to read chunks from. It is not closed
+     * when this stream is closed.
+     */
+    ChunkedInputStream(InputStream input)
+    {
+	mInput = new DataInputStream(input);
+	mRemaining = 0;
+	mFinished = false;
+    }
+
+    public int read()
+	throws IOException
+    {
+	if (!nextChunk())
+	{
+	    return -1;
+	}
+
+	int b = mInput.read();
+
+	if (b == -1)
+	{
+	    throw new EOFException("connection closed within a chunk");
+	}
+
+	--mRemaining;
+
+	return b;
+    }
+
+    public int read(byte[] b, int off, int len)
+	throws IOException
+    {
+	if (len == 0)
+	{
+	    return 0;
+	}
+
+	if (!nextChunk())
+	{
+	    return -1;
+	}
+
+	int n = mInput.read(b, off, Math.min(len, mRemaining));
+
+	if (n == -1)
+	{
+	    throw new EOFException("connection closed within a chunk");
+	}
+
+	mRemaining -= n;
+
+	return n;
+    }
+
+    public int available()
+	throws IOException
+    {
+	return Math.min(mRemaining, mInput.available());
+    }
+
+    /**
+     * Skip any data up to and including the end marker, so that the
+     * underlying InputStream can be used for the next message.
+     */
+    public void close()
+	throws IOException
+    {
+	byte[] buf = new byte[4096];
+
+	while (read(buf, 0, buf.length) != -1)
+	{
+	    // discard unread data
+	}
+    }
+
+    /**
+     * Read the next chunk header if the current chunk is exhausted.
+     * @return False if the end marker has been reached.
+     */
+    private boolean nextChunk()
+	throws IOException
+    {
+	while (!mFinished && mRemaining == 0)
+	{
+	    int length = mInput.readInt();
+
+	    if (length < 0)
+	    {
+		throw new IOException("invalid chunk length: " + length);
+	    }
+
+	    if (length == 0)
+	    {
+		mFinished = true;
+	    }
+
+	    mRemaining = length;
+	}
+
+	return !mFinished;
+    }
+}
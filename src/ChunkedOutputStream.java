@@ -0,0 +1,101 @@
+// Copyright (C) 2026 YesLogic Pty. Ltd.
+// All rights reserved.
+
+package com.princexml;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * ChunkedOutputStream writes data as a sequence of length-prefixed chunks,
+ * so that a document of unknown length can be streamed over a connection
+ * that is also used for other messages. Each chunk is a four byte length
+ * followed by that many bytes, and the end of the data is marked by a
+ * chunk of length zero.
+ */
+class ChunkedOutputStream extends OutputStream
+{
+    private static final int BUFSIZE = 8192;
+
+    private DataOutputStream mOutput;
+    private byte[] mBuf;
+    private int mCount;
+    private boolean mFinished;
+
+    /**
+     * Constructor for ChunkedOutputStream.
+     * @param output The OutputStream to write chunks to. It is not closed
+     * when this stream is closed.
+     */
+    ChunkedOutputStream(OutputStream output)
+    {
+	mOutput = new DataOutputStream(output);
+	mBuf = new byte[BUFSIZE];
+	mCount = 0;
+	mFinished = false;
+    }
+
+    public void write(int b)
+	throws IOException
+    {
+	if (mCount == mBuf.length)
+	{
+	    writeChunk();
+	}
+
+	mBuf[mCount++] = (byte) b;
+    }
+
+    public void write(byte[] b, int off, int len)
+	throws IOException
+    {
+	while (len > 0)
+	{
+	    if (mCount == mBuf.length)
+	    {
+		writeChunk();
+	    }
+
+	    int n = Math.min(len, mBuf.length - mCount);
+	    System.arraycopy(b, off, mBuf, mCount, n);
+	    mCount += n;
+	    off += n;
+	    len -= n;
+	}
+    }
+
+    public void flush()
+	throws IOException
+    {
+	writeChunk();
+	mOutput.flush();
+    }
+
+    /**
+     * Write any buffered data followed by the end marker. The underlying
+     * OutputStream is flushed but not closed.
+     */
+    public void close()
+	throws IOException
+    {
+	if (!mFinished)
+	{
+	    mFinished = true;
+	    writeChunk();
+	    mOutput.writeInt(0);
+	    mOutput.flush();
+	}
+    }
+
+    private void writeChunk()
+	throws IOException
+    {
+	if (mCount > 0)
+	{
+	    mOutput.writeInt(mCount);
+	    mOutput.write(mBuf, 0, mCount);
+	    mCount = 0;
+	}
+    }
+}
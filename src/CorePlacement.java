@@ -0,0 +1,414 @@
+// Copyright (C) 2026 YesLogic Pty. Ltd.
+// All rights reserved.
+
+package com.princexml;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * CorePlacement pins each Prince process to its own set of CPU cores on
+ * Linux, by starting Prince through <code>taskset</code>, or through
+ * <code>numactl</code> if memory binding is enabled. The available cores
+ * are divided into slots that never cross a NUMA node, and each conversion
+ * is placed in the slot with the fewest running conversions. Cores are
+ * therefore only shared when more conversions are running than there are
+ * slots.
+ * <p>
+ * The same CorePlacement should be shared by all of the Prince instances in
+ * the application, so that it knows about every running conversion.
+ */
+public class CorePlacement
+{
+    private List mSlots;
+    private boolean mBindMemory;
+    private String mTasksetPath;
+    private String mNumactlPath;
+
+    /**
+     * Constructor for CorePlacement. The cores that this process is allowed
+     * to run on are detected from /proc and /sys and divided into slots of
+     * the given size within each NUMA node.
+     * @param coresPerJob The number of cores given to each conversion.
+     * @throws IllegalArgumentException if coresPerJob is less than 1.
+     */
+    public CorePlacement(int coresPerJob)
+    {
+	if (coresPerJob < 1)
+	{
+	    throw new IllegalArgumentException(
+		    "invalid value for coresPerJob: "+coresPerJob+
+		    " (must be at least 1)");
+	}
+
+	init(detectSlots(coresPerJob));
+    }
+
+    /**
+     * Constructor for CorePlacement with an explicit list of slots.
+     * @param coreSets The core set of each slot (Strings), in the form used
+     * by <code>taskset -c</code>, for example "0-3" or "4,6".
+     */
+    public CorePlacement(List coreSets)
+    {
+	List slots = new ArrayList();
+
+	for (int i = 0; i < coreSets.size(); ++i)
+	{
+	    slots.add(new Slot((String) coreSets.get(i), -1));
+	}
+
+	init(slots);
+    }
+
+    private void init(List slots)
+    {
+	if (slots.isEmpty())
+	{
+	    throw new IllegalArgumentException("no cores available");
+	}
+
+	mSlots = slots;
+	mBindMemory = false;
+	mTasksetPath = "taskset";
+	mNumactlPath = "numactl";
+    }
+
+    /**
+     * Specify whether each Prince process should also allocate its memory
+     * from the NUMA node of its cores. This requires <code>numactl</code>,
+     * and only applies to slots that were detected within a NUMA node.
+     * @param bindMemory True to bind memory to the local NUMA node.
+     */
+    public void setBindMemory(boolean bindMemory)
+    {
+	mBindMemory = bindMemory;
+    }
+
+    /**
+     * Specify the paths of the affinity tools.
+     * @param tasksetPath The path of taskset.
+     * @param numactlPath The path of numactl.
+     */
+    public void setToolPaths(String tasksetPath, String numactlPath)
+    {
+	mTasksetPath = tasksetPath;
+	mNumactlPath = numactlPath;
+    }
+
+    /**
+     * Get the number of slots, which is the number of conversions that can
+     * run without sharing cores.
+     * @return The number of slots.
+     */
+    public int getSlotCount()
+    {
+	return mSlots.size();
+    }
+
+    /**
+     * Get the core sets of the slots.
+     * @return A list of core sets (Strings).
+     */
+    public List getCoreSets()
+    {
+	List coreSets = new ArrayList();
+
+	for (int i = 0; i < mSlots.size(); ++i)
+	{
+	    coreSets.add(((Slot) mSlots.get(i)).mCores);
+	}
+
+	return coreSets;
+    }
+
+    /**
+     * Choose the slot with the fewest running conversions.
+     * @return The slot, which must be passed to <code>release()</code>.
+     */
+    synchronized Slot acquire()
+    {
+	Slot best = (Slot) mSlots.get(0);
+
+	for (int i = 1; i < mSlots.size(); ++i)
+	{
+	    Slot slot = (Slot) mSlots.get(i);
+
+	    if (slot.mJobs < best.mJobs)
+	    {
+		best = slot;
+	    }
+	}
+
+	++best.mJobs;
+
+	return best;
+    }
+
+    /**
+     * Release a slot chosen by <code>acquire()</code>.
+     * @param slot The slot.
+     */
+    synchronized void release(Slot slot)
+    {
+	--slot.mJobs;
+    }
+
+    /**
+     * Prefix a Prince command line with the affinity tool that will place
+     * it in the given slot.
+     * @param slot The slot.
+     * @param cmdline The command line used to call Prince.
+     * @return The new command line.
+     */
+    List wrapCommandLine(Slot slot, List cmdline)
+    {
+	List wrapped = new ArrayList();
+
+	if (mBindMemory && slot.mNode >= 0)
+	{
+	    wrapped.add(mNumactlPath);
+	    wrapped.add("--physcpubind=" + slot.mCores);
+	    wrapped.add("--membind=" + slot.mNode);
+	}
+	else
+	{
+	    wrapped.add(mTasksetPath);
+	    wrapped.add("-c");
+	    wrapped.add(slot.mCores);
+	}
+
+	wrapped.addAll(cmdline);
+
+	return wrapped;
+    }
+
+    /**
+     * Divide the allowed cores into slots within each NUMA node. Slots from
+     * different nodes are interleaved so that lightly loaded systems spread
+     * conversions across nodes.
+     */
+    private static List detectSlots(int coresPerJob)
+    {
+	TreeSet allowed = readAllowedCores();
+
+	if (allowed == null)
+	{
+	    allowed = new TreeSet();
+
+	    for (int i = 0; i < Runtime.getRuntime().availableProcessors(); ++i)
+	    {
+		allowed.add(Integer.valueOf(i));
+	    }
+	}
+
+	List nodeSlots = new ArrayList();
+	File[] nodes = new File("/sys/devices/system/node").listFiles();
+
+	if (nodes != null)
+	{
+	    for (int i = 0; i < nodes.length; ++i)
+	    {
+		String name = nodes[i].getName();
+
+		if (!name.matches("node[0-9]+"))
+		{
+		    continue;
+		}
+
+		int node = Integer.parseInt(name.substring(4));
+		TreeSet cores = parseCoreList(
+		    readLine(new File(nodes[i], "cpulist")));
+
+		cores.retainAll(allowed);
+		nodeSlots.add(divide(cores, coresPerJob, node));
+	    }
+	}
+
+	List slots = new ArrayList();
+	boolean added = true;
+
+	for (int i = 0; added; ++i)
+	{
+	    added = false;
+
+	    for (int j = 0; j < nodeSlots.size(); ++j)
+	    {
+		List node = (List) nodeSlots.get(j);
+
+		if (i < node.size())
+		{
+		    slots.add(node.get(i));
+		    added = true;
+		}
+	    }
+	}
+
+	if (slots.isEmpty())
+	{
+	    // no NUMA information is available
+	    slots = divide(allowed, coresPerJob, -1);
+	}
+
+	return slots;
+    }
+
+    /**
+     * Divide a set of cores into slots of the given size. Any cores left
+     * over are not used, unless there are too few cores for a single slot.
+     */
+    private static List divide(TreeSet cores, int coresPerJob, int node)
+    {
+	List slots = new ArrayList();
+	Object[] list = cores.toArray();
+	int count = (list.length >= coresPerJob ? coresPerJob : list.length);
+
+	for (int i = 0; count > 0 && i + count <= list.length; i += count)
+	{
+	    StringBuffer coreSet = new StringBuffer();
+
+	    for (int j = i; j < i + count; ++j)
+	    {
+		if (j > i)
+		{
+		    coreSet.append(',');
+		}
+		coreSet.append(list[j]);
+	    }
+
+	    slots.add(new Slot(coreSet.toString(), node));
+	}
+
+	return slots;
+    }
+
+    /**
+     * Read the cores that this process may run on from /proc/self/status.
+     * @return The set of cores (Integers), or null if it is not available.
+     */
+    private static TreeSet readAllowedCores()
+    {
+	try
+	{
+	    BufferedReader reader =
+		new BufferedReader(new FileReader("/proc/self/status"));
+
+	    try
+	    {
+		String line;
+
+		while ((line = reader.readLine()) != null)
+		{
+		    if (line.startsWith("Cpus_allowed_list:"))
+		    {
+			return parseCoreList(
+			    line.substring(line.indexOf(':') + 1));
+		    }
+		}
+	    }
+	    finally
+	    {
+		reader.close();
+	    }
+	}
+	catch (IOException e)
+	{
+	    // /proc is not available
+	}
+
+	return null;
+    }
+
+    private static String readLine(File file)
+    {
+	try
+	{
+	    BufferedReader reader = new BufferedReader(new FileReader(file));
+
+	    try
+	    {
+		return reader.readLine();
+	    }
+	    finally
+	    {
+		reader.close();
+	    }
+	}
+	catch (IOException e)
+	{
+	    return null;
+	}
+    }
+
+    /**
+     * Parse a Linux CPU list such as "0-3,8-11".
+     * @return The set of cores (Integers).
+     */
+    private static TreeSet parseCoreList(String list)
+    {
+	TreeSet cores = new TreeSet();
+
+	if (list == null)
+	{
+	    return cores;
+	}
+
+	String[] ranges = list.trim().split(",");
+
+	for (int i = 0; i < ranges.length; ++i)
+	{
+	    String range = ranges[i].trim();
+	    int dash = range.indexOf('-');
+
+	    try
+	    {
+		if (dash == -1)
+		{
+		    if (range.length() > 0)
+		    {
+			cores.add(Integer.valueOf(range));
+		    }
+		}
+		else
+		{
+		    int first = Integer.parseInt(range.substring(0, dash));
+		    int last = Integer.parseInt(range.substring(dash + 1));
+
+		    for (int core = first; core <= last; ++core)
+		    {
+			cores.add(Integer.valueOf(core));
+		    }
+		}
+	    }
+	    catch (NumberFormatException e)
+	    {
+		// ignore malformed ranges
+	    }
+	}
+
+	return cores;
+    }
+
+    /**
+     * A set of cores that conversions are placed on.
+     */
+    static class Slot
+    {
+	private String mCores;
+	private int mNode;
+	private int mJobs;
+
+	Slot(String cores, int node)
+	{
+	    mCores = cores;
+	    mNode = node;
+	    mJobs = 0;
+	}
+    }
+}
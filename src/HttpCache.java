@@ -0,0 +1,480 @@
+// Copyright (C) 2026 YesLogic Pty. Ltd.
+// All rights reserved.
+
+package com.princexml;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HttpCache stores the HTTP responses fetched by an HttpCacheProxy in a
+ * bounded memory cache backed by a bounded disk cache. Both are kept in
+ * least recently used order, and the least recently used responses are
+ * discarded when a cache is full. Responses are written to disk as they
+ * are stored, so a response that is evicted from memory can still be
+ * served from disk until it expires.
+ */
+class HttpCache
+{
+    private static final int FILE_MAGIC = 0x50484331; // "PHC1"
+    private static final String FILE_PREFIX = "prince-http-";
+    private static final String FILE_SUFFIX = ".cache";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private long mMemoryLimit;
+    private long mMemoryUsed;
+    private Map mMemory;
+
+    private File mDiskDir;
+    private long mDiskLimit;
+    private long mDiskUsed;
+    private Map mDisk;
+
+    /**
+     * Constructor for HttpCache. Any files left in the disk cache directory
+     * by a previous cache are removed. Other files in the directory are
+     * left alone, as the names of cache files all start with the same
+     * prefix.
+     * @param memoryBytes The maximum total size of the responses held in
+     * memory.
+     * @param diskDir The directory of the disk cache, or null to only cache
+     * responses in memory.
+     * @param diskBytes The maximum total size of the responses held on disk.
+     */
+    HttpCache(long memoryBytes, File diskDir, long diskBytes)
+    {
+	mMemoryLimit = memoryBytes;
+	mMemoryUsed = 0;
+	mMemory = new LinkedHashMap(16, 0.75f, true);
+
+	mDiskDir = diskDir;
+	mDiskLimit = (diskDir != null ? diskBytes : 0);
+	mDiskUsed = 0;
+	mDisk = new LinkedHashMap(16, 0.75f, true);
+
+	if (mDiskDir != null)
+	{
+	    mDiskDir.mkdirs();
+
+	    File[] files = mDiskDir.listFiles();
+
+	    for (int i = 0; files != null && i < files.length; ++i)
+	    {
+		String name = files[i].getName();
+
+		if (name.startsWith(FILE_PREFIX) &&
+		    (name.endsWith(FILE_SUFFIX) || name.endsWith(TMP_SUFFIX)))
+		{
+		    files[i].delete();
+		}
+	    }
+	}
+    }
+
+    synchronized long getMemoryUsed()
+    {
+	return mMemoryUsed;
+    }
+
+    synchronized long getDiskUsed()
+    {
+	return mDiskUsed;
+    }
+
+    /**
+     * Look up a response that is still fresh. Expired responses are
+     * discarded.
+     * @param url The URL of the response.
+     * @return The response, or null if there is no fresh response.
+     */
+    Response get(String url)
+    {
+	long now = System.currentTimeMillis();
+	Long diskSize;
+
+	synchronized (this)
+	{
+	    Response response = (Response) mMemory.get(url);
+
+	    if (response != null)
+	    {
+		if (response.isFresh(now))
+		{
+		    return response;
+		}
+
+		removeFromMemory(url);
+	    }
+
+	    diskSize = (Long) mDisk.get(url);
+	}
+
+	if (diskSize == null)
+	{
+	    return null;
+	}
+
+	Response response = readFile(url);
+
+	synchronized (this)
+	{
+	    if (response == null || !response.isFresh(now))
+	    {
+		removeFromDisk(url);
+		return null;
+	    }
+
+	    addToMemory(url, response);
+	}
+
+	return response;
+    }
+
+    /**
+     * Store a response, replacing any response already stored for its URL.
+     * @param url The URL of the response.
+     * @param response The response, which must not be modified afterwards.
+     */
+    void put(String url, Response response)
+    {
+	long size = response.getSize();
+	boolean toDisk = (size <= mDiskLimit && writeFile(url, response));
+
+	synchronized (this)
+	{
+	    removeFromMemory(url);
+	    addToMemory(url, response);
+
+	    if (toDisk)
+	    {
+		// the file has already been replaced, so only drop the old
+		// entry's size rather than deleting the file
+		Long oldSize = (Long) mDisk.remove(url);
+
+		if (oldSize != null)
+		{
+		    mDiskUsed -= oldSize.longValue();
+		}
+
+		mDisk.put(url, Long.valueOf(size));
+		mDiskUsed += size;
+
+		Iterator i = mDisk.entrySet().iterator();
+
+		while (mDiskUsed > mDiskLimit && i.hasNext())
+		{
+		    Map.Entry eldest = (Map.Entry) i.next();
+
+		    getFile((String) eldest.getKey()).delete();
+		    mDiskUsed -= ((Long) eldest.getValue()).longValue();
+		    i.remove();
+		}
+	    }
+	}
+    }
+
+    private void addToMemory(String url, Response response)
+    {
+	long size = response.getSize();
+
+	if (size > mMemoryLimit)
+	{
+	    return;
+	}
+
+	mMemory.put(url, response);
+	mMemoryUsed += size;
+
+	Iterator i = mMemory.values().iterator();
+
+	while (mMemoryUsed > mMemoryLimit && i.hasNext())
+	{
+	    // evicted responses can still be read back from disk
+	    mMemoryUsed -= ((Response) i.next()).getSize();
+	    i.remove();
+	}
+    }
+
+    private void removeFromMemory(String url)
+    {
+	Response response = (Response) mMemory.remove(url);
+
+	if (response != null)
+	{
+	    mMemoryUsed -= response.getSize();
+	}
+    }
+
+    private void removeFromDisk(String url)
+    {
+	Long size = (Long) mDisk.remove(url);
+
+	if (size != null)
+	{
+	    getFile(url).delete();
+	    mDiskUsed -= size.longValue();
+	}
+    }
+
+    private boolean writeFile(String url, Response response)
+    {
+	File file = getFile(url);
+	File tmpFile = null;
+
+	try
+	{
+	    tmpFile = File.createTempFile(FILE_PREFIX, TMP_SUFFIX, mDiskDir);
+
+	    DataOutputStream output = new DataOutputStream(
+		new BufferedOutputStream(new FileOutputStream(tmpFile)));
+
+	    try
+	    {
+		output.writeInt(FILE_MAGIC);
+		output.writeUTF(url);
+		response.write(output);
+	    }
+	    finally
+	    {
+		output.close();
+	    }
+
+	    // a reader never sees a partly written file
+	    file.delete();
+
+	    if (!tmpFile.renameTo(file))
+	    {
+		tmpFile.delete();
+		return false;
+	    }
+
+	    return true;
+	}
+	catch (IOException e)
+	{
+	    if (tmpFile != null)
+	    {
+		tmpFile.delete();
+	    }
+
+	    return false;
+	}
+    }
+
+    private Response readFile(String url)
+    {
+	try
+	{
+	    DataInputStream input = new DataInputStream(
+		new BufferedInputStream(new FileInputStream(getFile(url))));
+
+	    try
+	    {
+		if (input.readInt() != FILE_MAGIC ||
+		    !input.readUTF().equals(url))
+		{
+		    return null;
+		}
+
+		return Response.read(input);
+	    }
+	    finally
+	    {
+		input.close();
+	    }
+	}
+	catch (IOException e)
+	{
+	    // the file has been evicted or is damaged
+	    return null;
+	}
+    }
+
+    private File getFile(String url)
+    {
+	try
+	{
+	    MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+	    byte[] digest = sha1.digest(url.getBytes("UTF-8"));
+	    StringBuffer name = new StringBuffer();
+
+	    for (int i = 0; i < digest.length; ++i)
+	    {
+		name.append(Integer.toHexString((digest[i] & 0xff) | 0x100)
+			    .substring(1));
+	    }
+
+	    return new File(mDiskDir, FILE_PREFIX + name + FILE_SUFFIX);
+	}
+	catch (NoSuchAlgorithmException e)
+	{
+	    throw new RuntimeException(e.toString());
+	}
+	catch (IOException e)
+	{
+	    throw new RuntimeException(e.toString());
+	}
+    }
+
+    /**
+     * An HTTP response, without its hop-by-hop headers.
+     */
+    static class Response
+    {
+	private int mStatus;
+	private String mMessage;
+	private List mNames;
+	private List mValues;
+	private byte[] mBody;
+	private long mStoredAt;
+	private long mExpires;
+
+	Response(int status, String message)
+	{
+	    mStatus = status;
+	    mMessage = (message != null ? message : "");
+	    mNames = new ArrayList();
+	    mValues = new ArrayList();
+	    mBody = new byte[0];
+	    mStoredAt = 0;
+	    mExpires = 0;
+	}
+
+	int getStatus()
+	{
+	    return mStatus;
+	}
+
+	String getMessage()
+	{
+	    return mMessage;
+	}
+
+	List getHeaderNames()
+	{
+	    return mNames;
+	}
+
+	List getHeaderValues()
+	{
+	    return mValues;
+	}
+
+	void addHeader(String name, String value)
+	{
+	    mNames.add(name);
+	    mValues.add(value);
+	}
+
+	byte[] getBody()
+	{
+	    return mBody;
+	}
+
+	void setBody(byte[] body)
+	{
+	    mBody = body;
+	}
+
+	/**
+	 * Get the time at which the response was generated, which is used
+	 * to calculate its age.
+	 * @return The time in milliseconds.
+	 */
+	long getStoredAt()
+	{
+	    return mStoredAt;
+	}
+
+	/**
+	 * Set the time at which the response was generated and the time at
+	 * which it expires.
+	 * @param storedAt The time in milliseconds.
+	 * @param expires The time in milliseconds, or 0 if the response
+	 * cannot be cached.
+	 */
+	void setFreshness(long storedAt, long expires)
+	{
+	    mStoredAt = storedAt;
+	    mExpires = expires;
+	}
+
+	boolean isFresh(long now)
+	{
+	    return now < mExpires;
+	}
+
+	/**
+	 * Get the approximate memory used by the response.
+	 * @return The size in bytes.
+	 */
+	long getSize()
+	{
+	    long size = mBody.length + mMessage.length() + 64;
+
+	    for (int i = 0; i < mNames.size(); ++i)
+	    {
+		size += ((String) mNames.get(i)).length() +
+		    ((String) mValues.get(i)).length() + 16;
+	    }
+
+	    return size;
+	}
+
+	void write(DataOutputStream output)
+	    throws IOException
+	{
+	    output.writeInt(mStatus);
+	    output.writeUTF(mMessage);
+	    output.writeLong(mStoredAt);
+	    output.writeLong(mExpires);
+	    output.writeInt(mNames.size());
+
+	    for (int i = 0; i < mNames.size(); ++i)
+	    {
+		output.writeUTF((String) mNames.get(i));
+		output.writeUTF((String) mValues.get(i));
+	    }
+
+	    output.writeInt(mBody.length);
+	    output.write(mBody);
+	}
+
+	static Response read(DataInputStream input)
+	    throws IOException
+	{
+	    Response response = new Response(input.readInt(), input.readUTF());
+
+	    response.mStoredAt = input.readLong();
+	    response.mExpires = input.readLong();
+
+	    int count = input.readInt();
+
+	    for (int i = 0; i < count; ++i)
+	    {
+		response.addHeader(input.readUTF(), input.readUTF());
+	    }
+
+	    byte[] body = new byte[input.readInt()];
+	    input.readFully(body);
+	    response.mBody = body;
+
+	    return response;
+	}
+    }
+}
@@ -0,0 +1,1201 @@
+// Copyright (C) 2026 YesLogic Pty. Ltd.
+// All rights reserved.
+
+package com.princexml;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HttpCacheProxy is a caching HTTP proxy that runs inside the JVM and
+ * listens on the loopback interface. When it is given to a Prince instance
+ * with <code>Prince.setHttpCacheProxy()</code>, the Prince processes fetch
+ * remote images, fonts and style sheets through it, so resources that are
+ * shared by many documents are only downloaded once. The same
+ * HttpCacheProxy may be shared by many Prince instances.
+ * <p>
+ * Only successful GET responses that carry an explicit lifetime in their
+ * Cache-Control max-age or Expires headers are cached, and responses marked
+ * no-store, no-cache or private, responses that vary by request header, and
+ * responses to requests with credentials that are not marked public are
+ * never cached. Identical GET requests, with the same cookies, that arrive
+ * while a response is being fetched wait for that response rather than
+ * fetching it again, and fetch it themselves if it cannot be cached.
+ * <p>
+ * HTTPS requests are tunnelled with CONNECT and are not cached. Request
+ * bodies are limited to 16MB.
+ */
+public class HttpCacheProxy
+{
+    private static final int TIMEOUT = 60000;
+    private static final int BUFSIZE = 65536;
+    private static final int MAX_LINE = 65536;
+    private static final int MAX_HEADERS = 256;
+    private static final int MAX_BODY = 16 << 20;
+
+    private static final Set HOP_BY_HOP = new HashSet(Arrays.asList(
+	new String[] {
+	    "connection", "keep-alive", "proxy-connection",
+	    "proxy-authenticate", "proxy-authorization", "te", "trailer",
+	    "trailers", "transfer-encoding", "upgrade"
+	}));
+
+    private HttpCache mCache;
+    private long mMaxEntrySize;
+    private Proxy mUpstream;
+    private ServerSocket mServerSocket;
+    private Set mConnections;
+    private Map mInFlight;
+    private AtomicLong mHits;
+    private AtomicLong mMisses;
+    private AtomicLong mMerged;
+
+    /**
+     * Constructor for HttpCacheProxy.
+     * @param memoryBytes The maximum total size of the responses cached in
+     * memory.
+     * @param diskDir The directory used for the disk cache, or null to only
+     * cache responses in memory. Cache files left in this directory by a
+     * previous HttpCacheProxy are removed.
+     * @param diskBytes The maximum total size of the responses cached on
+     * disk.
+     */
+    public HttpCacheProxy(long memoryBytes, File diskDir, long diskBytes)
+    {
+	mCache = new HttpCache(memoryBytes, diskDir, diskBytes);
+	mMaxEntrySize = 8L << 20;
+	mUpstream = Proxy.NO_PROXY;
+	mServerSocket = null;
+	mConnections = new HashSet();
+	mInFlight = new HashMap();
+	mHits = new AtomicLong();
+	mMisses = new AtomicLong();
+	mMerged = new AtomicLong();
+    }
+
+    /**
+     * Specify the largest response that will be cached. Larger responses
+     * are passed through without being held in memory. The default is 8MB.
+     * @param maxEntrySize The maximum size in bytes.
+     */
+    public void setMaxEntrySize(long maxEntrySize)
+    {
+	mMaxEntrySize = maxEntrySize;
+    }
+
+    /**
+     * Specify an HTTP proxy server that requests are forwarded to, if
+     * needed. CONNECT tunnels for HTTPS requests are made through the same
+     * proxy server.
+     * @param host The host name of the proxy server, or null to connect
+     * directly.
+     * @param port The port of the proxy server.
+     */
+    public void setUpstreamProxy(String host, int port)
+    {
+	if (host == null)
+	{
+	    mUpstream = Proxy.NO_PROXY;
+	}
+	else
+	{
+	    mUpstream = new Proxy(Proxy.Type.HTTP,
+				  new InetSocketAddress(host, port));
+	}
+    }
+
+    /**
+     * Start listening for connections on a free port of the loopback
+     * interface. This has no effect if the proxy has already been started.
+     */
+    public synchronized void start()
+	throws IOException
+    {
+	if (mServerSocket != null)
+	{
+	    return;
+	}
+
+	mServerSocket = new ServerSocket(0, 50, InetAddress.getByName(null));
+
+	Thread thread = new Thread(new Runnable() {
+	    public void run()
+	    {
+		acceptLoop();
+	    }
+	}, "HttpCacheProxy-" + mServerSocket.getLocalPort());
+	thread.setDaemon(true);
+	thread.start();
+    }
+
+    /**
+     * Get the port that the proxy is listening on.
+     * @return The port, or -1 if the proxy has not been started.
+     */
+    public synchronized int getPort()
+    {
+	return (mServerSocket != null ? mServerSocket.getLocalPort() : -1);
+    }
+
+    /**
+     * Get the URL of the proxy, as passed to Prince with --http-proxy.
+     * @return The URL, or null if the proxy has not been started.
+     */
+    public synchronized String getProxyURL()
+    {
+	if (mServerSocket == null)
+	{
+	    return null;
+	}
+
+	return "http://127.0.0.1:" + mServerSocket.getLocalPort() + "/";
+    }
+
+    /**
+     * Stop listening and close all connections. The cache is kept, and the
+     * proxy may be started again.
+     */
+    public void stop()
+	throws IOException
+    {
+	ServerSocket serverSocket;
+
+	synchronized (this)
+	{
+	    serverSocket = mServerSocket;
+	    mServerSocket = null;
+	}
+
+	if (serverSocket != null)
+	{
+	    serverSocket.close();
+	}
+
+	synchronized (mConnections)
+	{
+	    for (Iterator i = mConnections.iterator(); i.hasNext(); )
+	    {
+		((Socket) i.next()).close();
+	    }
+
+	    mConnections.clear();
+	}
+    }
+
+    /**
+     * Get the number of requests that were served from the cache.
+     * @return The number of cache hits.
+     */
+    public long getHits()
+    {
+	return mHits.get();
+    }
+
+    /**
+     * Get the number of requests that were forwarded to the origin server.
+     * @return The number of cache misses.
+     */
+    public long getMisses()
+    {
+	return mMisses.get();
+    }
+
+    /**
+     * Get the number of requests that were served by waiting for an
+     * identical request that was already being fetched.
+     * @return The number of merged requests.
+     */
+    public long getMergedCount()
+    {
+	return mMerged.get();
+    }
+
+    /**
+     * Get the total size of the responses cached in memory.
+     * @return The size in bytes.
+     */
+    public long getMemoryUsed()
+    {
+	return mCache.getMemoryUsed();
+    }
+
+    /**
+     * Get the total size of the responses cached on disk.
+     * @return The size in bytes.
+     */
+    public long getDiskUsed()
+    {
+	return mCache.getDiskUsed();
+    }
+
+    private void acceptLoop()
+    {
+	ServerSocket serverSocket;
+
+	synchronized (this)
+	{
+	    serverSocket = mServerSocket;
+	}
+
+	while (true)
+	{
+	    final Socket socket;
+
+	    try
+	    {
+		socket = serverSocket.accept();
+	    }
+	    catch (IOException e)
+	    {
+		// the server socket has been closed
+		return;
+	    }
+
+	    synchronized (mConnections)
+	    {
+		mConnections.add(socket);
+	    }
+
+	    Thread thread = new Thread(new Runnable() {
+		public void run()
+		{
+		    serve(socket);
+		}
+	    }, "HttpCacheProxy-" + socket.getRemoteSocketAddress());
+	    thread.setDaemon(true);
+	    thread.start();
+	}
+    }
+
+    /**
+     * Handle one request. Each connection carries a single request and is
+     * closed once the response has been sent.
+     */
+    private void serve(Socket socket)
+    {
+	try
+	{
+	    InputStream input =
+		new BufferedInputStream(socket.getInputStream());
+	    OutputStream output =
+		new BufferedOutputStream(socket.getOutputStream());
+
+	    Request request = readRequest(input);
+
+	    if (request == null)
+	    {
+		// the client closed the connection without a request
+	    }
+	    else if (request.mMethod.equals("CONNECT"))
+	    {
+		tunnel(socket, input, output, request.mTarget);
+	    }
+	    else if (!request.mTarget.startsWith("http://"))
+	    {
+		sendError(output, 400, "Bad Request");
+	    }
+	    else if (request.getHeader("Transfer-Encoding") != null)
+	    {
+		// chunked request bodies are not supported
+		sendError(output, 411, "Length Required");
+	    }
+	    else
+	    {
+		int status = readBody(request, input);
+
+		if (status == 400)
+		{
+		    sendError(output, 400, "Bad Request");
+		}
+		else if (status == 413)
+		{
+		    sendError(output, 413, "Payload Too Large");
+		}
+		else
+		{
+		    handleRequest(request, output);
+		}
+	    }
+
+	    output.flush();
+	}
+	catch (IOException e)
+	{
+	    // the connection is unusable, drop it
+	}
+	finally
+	{
+	    synchronized (mConnections)
+	    {
+		mConnections.remove(socket);
+	    }
+
+	    try
+	    {
+		socket.close();
+	    }
+	    catch (IOException e)
+	    {
+		// ignore errors closing the connection
+	    }
+	}
+    }
+
+    private void handleRequest(Request request, OutputStream output)
+	throws IOException
+    {
+	String url = request.mTarget;
+	boolean mergeable = request.mMethod.equals("GET") &&
+	    request.getHeader("Authorization") == null &&
+	    request.getHeader("Range") == null &&
+	    request.getHeader("If-Modified-Since") == null &&
+	    request.getHeader("If-None-Match") == null;
+
+	if (!mergeable)
+	{
+	    mMisses.incrementAndGet();
+	    forward(request, output);
+	    return;
+	}
+
+	String cacheControl = request.getHeader("Cache-Control");
+	String pragma = request.getHeader("Pragma");
+	boolean reload = hasDirective(cacheControl, "no-cache") ||
+	    (cacheControl == null && hasDirective(pragma, "no-cache"));
+
+	if (!reload)
+	{
+	    HttpCache.Response cached = mCache.get(url);
+
+	    if (cached != null)
+	    {
+		mHits.incrementAndGet();
+		sendResponse(output, cached);
+		return;
+	    }
+	}
+
+	// requests with different cookies may get personalised responses,
+	// so they are only merged with requests carrying the same cookies
+	String cookie = request.getHeader("Cookie");
+	String key = (cookie != null ? url + "\n" + cookie : url);
+	Fetch fetch;
+	boolean leader = false;
+
+	synchronized (mInFlight)
+	{
+	    fetch = (Fetch) mInFlight.get(key);
+
+	    if (fetch == null)
+	    {
+		fetch = new Fetch();
+		mInFlight.put(key, fetch);
+		leader = true;
+	    }
+	}
+
+	if (!leader)
+	{
+	    HttpCache.Response shared = fetch.await();
+
+	    if (shared != null)
+	    {
+		mMerged.incrementAndGet();
+		sendResponse(output, shared);
+	    }
+	    else
+	    {
+		// the response could not be shared, so fetch it separately
+		mMisses.incrementAndGet();
+		forward(request, output);
+	    }
+
+	    return;
+	}
+
+	mMisses.incrementAndGet();
+
+	HttpCache.Response response = null;
+	boolean shareable = false;
+
+	try
+	{
+	    response = fetchShared(request, output);
+
+	    // only a cacheable response may be shared, as any other response
+	    // (including one with Vary) may depend on the request
+	    shareable = (response != null &&
+			 response.isFresh(System.currentTimeMillis()));
+
+	    if (shareable && !hasDirective(cacheControl, "no-store"))
+	    {
+		mCache.put(url, response);
+	    }
+	}
+	finally
+	{
+	    // store the response before removing the fetch, so that a request
+	    // arriving in between finds it in the cache
+	    synchronized (mInFlight)
+	    {
+		mInFlight.remove(key);
+	    }
+
+	    fetch.complete(shareable ? response : null);
+	}
+
+	if (response != null)
+	{
+	    sendResponse(output, response);
+	}
+    }
+
+    /**
+     * Fetch a response that may be shared with identical requests. The
+     * response is buffered unless it is too large to cache, in which case
+     * it is streamed to the client instead.
+     * @return The buffered response, or null if the response has been
+     * streamed to the client or must not be shared.
+     */
+    private HttpCache.Response fetchShared(Request request,
+					   OutputStream output)
+	throws IOException
+    {
+	HttpURLConnection conn;
+
+	try
+	{
+	    conn = openConnection(request);
+	}
+	catch (IOException e)
+	{
+	    sendError(output, 502, "Bad Gateway");
+	    return null;
+	}
+
+	try
+	{
+	    HttpCache.Response response = readHead(conn);
+	    InputStream body = getBody(conn);
+	    long length = conn.getContentLength();
+
+	    if (length > mMaxEntrySize)
+	    {
+		sendStreamed(output, response, length, body);
+		return null;
+	    }
+
+	    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+	    byte[] buf = new byte[BUFSIZE];
+	    int bytesRead;
+
+	    while ((bytesRead = body.read(buf, 0, BUFSIZE)) != -1)
+	    {
+		buffer.write(buf, 0, bytesRead);
+
+		if (buffer.size() > mMaxEntrySize)
+		{
+		    // too large to cache, send what has been read and stream
+		    // the rest
+		    sendHead(output, response, -1);
+		    buffer.writeTo(output);
+		    Util.copyInputToOutput(body, output);
+		    return null;
+		}
+	    }
+
+	    response.setBody(buffer.toByteArray());
+
+	    String cacheControl = conn.getHeaderField("Cache-Control");
+
+	    if (hasDirective(cacheControl, "no-store") ||
+		hasDirective(cacheControl, "private"))
+	    {
+		// send it to this client only
+		sendResponse(output, response);
+		return null;
+	    }
+
+	    setFreshness(response, conn, request);
+
+	    return response;
+	}
+	finally
+	{
+	    conn.disconnect();
+	}
+    }
+
+    /**
+     * Forward a request to the origin server and stream the response back
+     * without caching it.
+     */
+    private void forward(Request request, OutputStream output)
+	throws IOException
+    {
+	HttpURLConnection conn;
+
+	try
+	{
+	    conn = openConnection(request);
+	}
+	catch (IOException e)
+	{
+	    sendError(output, 502, "Bad Gateway");
+	    return;
+	}
+
+	try
+	{
+	    HttpCache.Response response = readHead(conn);
+
+	    sendStreamed(output, response, conn.getContentLength(),
+			 getBody(conn));
+	}
+	finally
+	{
+	    conn.disconnect();
+	}
+    }
+
+    private HttpURLConnection openConnection(Request request)
+	throws IOException
+    {
+	HttpURLConnection conn = (HttpURLConnection)
+	    new URL(request.mTarget).openConnection(mUpstream);
+
+	conn.setInstanceFollowRedirects(false);
+	conn.setUseCaches(false);
+	conn.setConnectTimeout(TIMEOUT);
+	conn.setReadTimeout(TIMEOUT);
+	conn.setRequestMethod(request.mMethod);
+
+	for (int i = 0; i < request.mNames.size(); ++i)
+	{
+	    String name = (String) request.mNames.get(i);
+	    String lowerName = name.toLowerCase();
+
+	    if (!HOP_BY_HOP.contains(lowerName) && !lowerName.equals("host") &&
+		!lowerName.equals("content-length"))
+	    {
+		conn.addRequestProperty(name, (String) request.mValues.get(i));
+	    }
+	}
+
+	// HttpURLConnection turns a GET with a body into a POST
+	if (request.mBody != null && !request.mMethod.equals("GET") &&
+	    !request.mMethod.equals("HEAD"))
+	{
+	    conn.setDoOutput(true);
+	    conn.setFixedLengthStreamingMode(request.mBody.length);
+
+	    OutputStream body = conn.getOutputStream();
+	    body.write(request.mBody);
+	    body.close();
+	}
+
+	// this sends the request and reads the status line
+	conn.getResponseCode();
+
+	return conn;
+    }
+
+    private static HttpCache.Response readHead(HttpURLConnection conn)
+	throws IOException
+    {
+	HttpCache.Response response = new HttpCache.Response(
+	    conn.getResponseCode(), conn.getResponseMessage());
+
+	for (int i = 0; ; ++i)
+	{
+	    String value = conn.getHeaderField(i);
+
+	    if (value == null)
+	    {
+		break;
+	    }
+
+	    String name = conn.getHeaderFieldKey(i);
+
+	    // the status line has no name
+	    if (name == null)
+	    {
+		continue;
+	    }
+
+	    String lowerName = name.toLowerCase();
+
+	    if (!HOP_BY_HOP.contains(lowerName) &&
+		!lowerName.equals("content-length") &&
+		!lowerName.equals("age"))
+	    {
+		response.addHeader(name, value);
+	    }
+	}
+
+	return response;
+    }
+
+    private static InputStream getBody(HttpURLConnection conn)
+	throws IOException
+    {
+	InputStream body;
+
+	if (conn.getResponseCode() >= 400)
+	{
+	    body = conn.getErrorStream();
+	}
+	else
+	{
+	    body = conn.getInputStream();
+	}
+
+	return (body != null ? body : new ByteArrayInputStream(new byte[0]));
+    }
+
+    /**
+     * Decide how long a response may be cached for, from its Cache-Control
+     * max-age, or from its Expires and Date headers. Responses without an
+     * explicit lifetime are not cached.
+     */
+    private static void setFreshness(HttpCache.Response response,
+				     HttpURLConnection conn, Request request)
+    {
+	long now = System.currentTimeMillis();
+	String cacheControl = conn.getHeaderField("Cache-Control");
+	String pragma = conn.getHeaderField("Pragma");
+	long age = parseSeconds(conn.getHeaderField("Age"));
+	long storedAt = now - Math.max(0, age) * 1000;
+
+	if (response.getStatus() != HttpURLConnection.HTTP_OK ||
+	    conn.getHeaderField("Vary") != null ||
+	    hasDirective(cacheControl, "no-cache") ||
+	    (cacheControl == null && hasDirective(pragma, "no-cache")) ||
+	    (request.getHeader("Authorization") != null &&
+	     !hasDirective(cacheControl, "public")))
+	{
+	    response.setFreshness(storedAt, 0);
+	    return;
+	}
+
+	long maxAge = parseSeconds(getDirective(cacheControl, "s-maxage"));
+
+	if (maxAge < 0)
+	{
+	    maxAge = parseSeconds(getDirective(cacheControl, "max-age"));
+	}
+
+	long lifetime;
+
+	if (maxAge >= 0)
+	{
+	    lifetime = maxAge * 1000;
+	}
+	else if (conn.getHeaderField("Expires") != null)
+	{
+	    // an invalid Expires date means the response has already expired
+	    long expires = conn.getExpiration();
+	    long date = conn.getDate();
+
+	    lifetime = (expires > 0 ? expires - (date > 0 ? date : now) : 0);
+	}
+	else
+	{
+	    lifetime = 0;
+	}
+
+	response.setFreshness(storedAt,
+			      (lifetime > 0 ? storedAt + lifetime : 0));
+    }
+
+    /**
+     * Make a CONNECT tunnel to the given host and port, and copy data in
+     * both directions until either side closes the connection.
+     */
+    private void tunnel(Socket socket, InputStream input,
+			OutputStream output, String target)
+	throws IOException
+    {
+	int colon = target.lastIndexOf(':');
+	final Socket remote = new Socket();
+	final InputStream remoteInput;
+
+	try
+	{
+	    String host = (colon != -1 ? target.substring(0, colon) : target);
+	    int port = (colon != -1 ?
+			Integer.parseInt(target.substring(colon + 1)) : 443);
+
+	    if (mUpstream.type() == Proxy.Type.HTTP)
+	    {
+		remote.connect(mUpstream.address(), TIMEOUT);
+		remoteInput = new BufferedInputStream(remote.getInputStream());
+
+		if (!connectUpstream(remote, remoteInput, host + ":" + port))
+		{
+		    remote.close();
+		    sendError(output, 502, "Bad Gateway");
+		    return;
+		}
+	    }
+	    else
+	    {
+		remote.connect(new InetSocketAddress(host, port), TIMEOUT);
+		remoteInput = remote.getInputStream();
+	    }
+	}
+	catch (IOException e)
+	{
+	    remote.close();
+	    sendError(output, 502, "Bad Gateway");
+	    return;
+	}
+	catch (NumberFormatException e)
+	{
+	    remote.close();
+	    sendError(output, 400, "Bad Request");
+	    return;
+	}
+
+	try
+	{
+	    writeAscii(output, "HTTP/1.1 200 Connection established\r\n\r\n");
+	    output.flush();
+
+	    final Socket client = socket;
+	    Thread thread = new Thread(new Runnable() {
+		public void run()
+		{
+		    try
+		    {
+			Util.copyInputToOutput(remoteInput,
+					       client.getOutputStream());
+			client.shutdownOutput();
+		    }
+		    catch (IOException e)
+		    {
+			// either side closed the connection
+		    }
+		}
+	    }, "HttpCacheProxy-tunnel-" + target);
+	    thread.setDaemon(true);
+	    thread.start();
+
+	    try
+	    {
+		Util.copyInputToOutput(input, remote.getOutputStream());
+		remote.shutdownOutput();
+		thread.join();
+	    }
+	    catch (InterruptedException e)
+	    {
+		// close the tunnel
+	    }
+	    catch (IOException e)
+	    {
+		// either side closed the connection
+	    }
+	}
+	finally
+	{
+	    remote.close();
+	}
+    }
+
+    /**
+     * Ask the upstream proxy server to open a tunnel to the given host and
+     * port, and read its response headers.
+     * @return True if the tunnel was opened.
+     */
+    private static boolean connectUpstream(Socket remote, InputStream input,
+					   String target)
+	throws IOException
+    {
+	OutputStream output = remote.getOutputStream();
+
+	writeAscii(output, "CONNECT " + target + " HTTP/1.1\r\nHost: " +
+		   target + "\r\n\r\n");
+	output.flush();
+
+	String statusLine = readLine(input);
+	String line;
+
+	while ((line = readLine(input)) != null && line.length() > 0)
+	{
+	    // skip the response headers
+	}
+
+	if (statusLine == null || line == null)
+	{
+	    return false;
+	}
+
+	String[] parts = statusLine.split(" ");
+
+	return (parts.length >= 2 && parts[1].startsWith("2"));
+    }
+
+    private static Request readRequest(InputStream input)
+	throws IOException
+    {
+	String requestLine = readLine(input);
+
+	if (requestLine == null || requestLine.length() == 0)
+	{
+	    return null;
+	}
+
+	String[] parts = requestLine.split(" ");
+
+	if (parts.length != 3)
+	{
+	    throw new IOException("bad request line: " + requestLine);
+	}
+
+	Request request = new Request(parts[0], parts[1]);
+	String line;
+
+	while ((line = readLine(input)) != null && line.length() > 0)
+	{
+	    if (request.mNames.size() == MAX_HEADERS)
+	    {
+		throw new IOException("too many request headers");
+	    }
+
+	    int colon = line.indexOf(':');
+
+	    if (colon > 0)
+	    {
+		request.mNames.add(line.substring(0, colon).trim());
+		request.mValues.add(line.substring(colon + 1).trim());
+	    }
+	}
+
+	return request;
+    }
+
+    /**
+     * Read the body of a request, if it has a Content-Length.
+     * @return 200 if the body was read, 400 if its length is invalid, or
+     * 413 if it is too large.
+     */
+    private static int readBody(Request request, InputStream input)
+	throws IOException
+    {
+	String contentLength = request.getHeader("Content-Length");
+
+	if (contentLength != null)
+	{
+	    long length;
+
+	    try
+	    {
+		length = Long.parseLong(contentLength.trim());
+	    }
+	    catch (NumberFormatException e)
+	    {
+		return 400;
+	    }
+
+	    if (length < 0)
+	    {
+		return 400;
+	    }
+
+	    if (length > MAX_BODY)
+	    {
+		return 413;
+	    }
+
+	    byte[] body = new byte[(int) length];
+	    int offset = 0;
+
+	    while (offset < body.length)
+	    {
+		int bytesRead = input.read(body, offset, body.length - offset);
+
+		if (bytesRead == -1)
+		{
+		    throw new IOException("request body is truncated");
+		}
+
+		offset += bytesRead;
+	    }
+
+	    request.mBody = body;
+	}
+
+	return 200;
+    }
+
+    /**
+     * Read a line of a request header, which ends with CRLF.
+     * @return The line without its line ending, or null at the end of the
+     * stream.
+     */
+    private static String readLine(InputStream input)
+	throws IOException
+    {
+	StringBuffer line = new StringBuffer();
+	int c;
+
+	while ((c = input.read()) != -1 && c != '\n')
+	{
+	    if (line.length() == MAX_LINE)
+	    {
+		throw new IOException("request header line is too long");
+	    }
+
+	    line.append((char) c);
+	}
+
+	if (c == -1 && line.length() == 0)
+	{
+	    return null;
+	}
+
+	if (line.length() > 0 && line.charAt(line.length() - 1) == '\r')
+	{
+	    line.setLength(line.length() - 1);
+	}
+
+	return line.toString();
+    }
+
+    private static void sendResponse(OutputStream output,
+				      HttpCache.Response response)
+	throws IOException
+    {
+	sendHead(output, response, response.getBody().length);
+	output.write(response.getBody());
+    }
+
+    private static void sendStreamed(OutputStream output,
+				     HttpCache.Response response, long length,
+				     InputStream body)
+	throws IOException
+    {
+	sendHead(output, response, length);
+	Util.copyInputToOutput(body, output);
+    }
+
+    /**
+     * Send the status line and headers of a response. The body follows, and
+     * is ended by closing the connection if its length is unknown.
+     */
+    private static void sendHead(OutputStream output,
+				 HttpCache.Response response, long length)
+	throws IOException
+    {
+	StringBuffer head = new StringBuffer();
+	List names = response.getHeaderNames();
+	List values = response.getHeaderValues();
+
+	head.append("HTTP/1.1 " + response.getStatus() + " " +
+		    response.getMessage() + "\r\n");
+
+	for (int i = 0; i < names.size(); ++i)
+	{
+	    head.append(names.get(i) + ": " + values.get(i) + "\r\n");
+	}
+
+	if (response.getStoredAt() > 0)
+	{
+	    long age = (System.currentTimeMillis() - response.getStoredAt()) /
+		1000;
+	    head.append("Age: " + Math.max(0, age) + "\r\n");
+	}
+
+	if (length >= 0)
+	{
+	    head.append("Content-Length: " + length + "\r\n");
+	}
+
+	head.append("Connection: close\r\n\r\n");
+
+	writeAscii(output, head.toString());
+    }
+
+    private static void sendError(OutputStream output, int status,
+				  String message)
+	throws IOException
+    {
+	HttpCache.Response response = new HttpCache.Response(status, message);
+
+	response.addHeader("Content-Type", "text/plain");
+	response.setBody((status + " " + message + "\n").getBytes("US-ASCII"));
+	sendResponse(output, response);
+    }
+
+    private static void writeAscii(OutputStream output, String str)
+	throws IOException
+    {
+	output.write(str.getBytes("ISO-8859-1"));
+    }
+
+    private static boolean hasDirective(String header, String name)
+    {
+	return getDirective(header, name) != null;
+    }
+
+    /**
+     * Find a directive in a comma-separated header such as Cache-Control.
+     * @return The value of the directive, an empty string if it has no
+     * value, or null if it is not present.
+     */
+    private static String getDirective(String header, String name)
+    {
+	if (header == null)
+	{
+	    return null;
+	}
+
+	String[] directives = header.split(",");
+
+	for (int i = 0; i < directives.length; ++i)
+	{
+	    String directive = directives[i].trim();
+	    int equals = directive.indexOf('=');
+	    String key = (equals != -1 ? directive.substring(0, equals)
+			  : directive).trim();
+
+	    if (key.equalsIgnoreCase(name))
+	    {
+		if (equals == -1)
+		{
+		    return "";
+		}
+
+		String value = directive.substring(equals + 1).trim();
+
+		if (value.length() >= 2 && value.startsWith("\"") &&
+		    value.endsWith("\""))
+		{
+		    value = value.substring(1, value.length() - 1);
+		}
+
+		return value;
+	    }
+	}
+
+	return null;
+    }
+
+    /**
+     * Parse a number of seconds.
+     * @return The number of seconds, or -1 if it is missing or invalid.
+     */
+    private static long parseSeconds(String value)
+    {
+	if (value == null)
+	{
+	    return -1;
+	}
+
+	try
+	{
+	    return Long.parseLong(value.trim());
+	}
+	catch (NumberFormatException e)
+	{
+	    return -1;
+	}
+    }
+
+    /**
+     * A request read from a client.
+     */
+    private static class Request
+    {
+	private String mMethod;
+	private String mTarget;
+	private List mNames;
+	private List mValues;
+	private byte[] mBody;
+
+	Request(String method, String target)
+	{
+	    mMethod = method;
+	    mTarget = target;
+	    mNames = new ArrayList();
+	    mValues = new ArrayList();
+	    mBody = null;
+	}
+
+	String getHeader(String name)
+	{
+	    for (int i = 0; i < mNames.size(); ++i)
+	    {
+		if (((String) mNames.get(i)).equalsIgnoreCase(name))
+		{
+		    return (String) mValues.get(i);
+		}
+	    }
+
+	    return null;
+	}
+    }
+
+    /**
+     * A response that is being fetched, which identical requests wait for.
+     */
+    private static class Fetch
+    {
+	private boolean mDone;
+	private HttpCache.Response mResponse;
+
+	Fetch()
+	{
+	    mDone = false;
+	    mResponse = null;
+	}
+
+	synchronized void complete(HttpCache.Response response)
+	{
+	    mResponse = response;
+	    mDone = true;
+	    notifyAll();
+	}
+
+	synchronized HttpCache.Response await()
+	{
+	    while (!mDone)
+	    {
+		try
+		{
+		    wait();
+		}
+		catch (InterruptedException e)
+		{
+		    return null;
+		}
+	    }
+
+	    return mResponse;
+	}
+    }
+}
@@ -0,0 +1,211 @@
+// Copyright (C) 2026 YesLogic Pty. Ltd.
+// All rights reserved.
+
+package com.princexml;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MemoryBudget limits the total resident memory of the Prince processes
+ * started by the Prince instances that share it. A conversion is only
+ * started once the projected memory use of the running conversions plus the
+ * estimated memory use of the new conversion fits within the budget;
+ * otherwise the calling thread waits until enough memory has been released.
+ * A conversion is always started if no other conversions are running, even
+ * if its estimate exceeds the budget.
+ * <p>
+ * The resident memory of each running Prince process is sampled from /proc
+ * on Linux. A running conversion is projected to use the larger of its
+ * current resident memory and the estimate it was admitted with.
+ * <p>
+ * Estimates are learned separately for each configuration, that is, for
+ * each distinct set of Prince command-line options. The estimate rises
+ * immediately to any higher peak that is observed and decays slowly towards
+ * lower peaks. Configurations that have not yet been seen use the default
+ * estimate. Only the estimates of the most recently used configurations
+ * are kept.
+ */
+public class MemoryBudget
+{
+    private static final double DECAY = 0.25;
+    private static final int MAX_ESTIMATES = 256;
+
+    private long mBudget;
+    private long mDefaultEstimate;
+    private Map mEstimates;
+    private List mRunning;
+
+    /**
+     * Constructor for MemoryBudget.
+     * @param budgetBytes The total resident memory, in bytes, that the
+     * Prince processes may use.
+     * @param defaultEstimateBytes The memory, in bytes, that a conversion is
+     * assumed to use when nothing is known about its configuration.
+     */
+    public MemoryBudget(long budgetBytes, long defaultEstimateBytes)
+    {
+	mBudget = budgetBytes;
+	mDefaultEstimate = defaultEstimateBytes;
+	mEstimates = new LinkedHashMap(16, 0.75f, true) {
+	    protected boolean removeEldestEntry(Map.Entry eldest)
+	    {
+		return size() > MAX_ESTIMATES;
+	    }
+	};
+	mRunning = new ArrayList();
+    }
+
+    /**
+     * Get the memory budget.
+     * @return The budget in bytes.
+     */
+    public long getBudget()
+    {
+	return mBudget;
+    }
+
+    /**
+     * Get the estimated memory use of a conversion.
+     * @param configKey The configuration of the conversion.
+     * @return The estimate in bytes.
+     */
+    public synchronized long getEstimate(String configKey)
+    {
+	Long estimate = (Long) mEstimates.get(configKey);
+
+	return (estimate != null ? estimate.longValue() : mDefaultEstimate);
+    }
+
+    /**
+     * Get the number of conversions currently running within the budget.
+     * @return The number of running conversions.
+     */
+    public synchronized int getRunningCount()
+    {
+	return mRunning.size();
+    }
+
+    /**
+     * Get the projected memory use of the running conversions.
+     * @return The projected memory use in bytes.
+     */
+    public synchronized long getProjectedUsage()
+    {
+	long total = 0;
+
+	for (int i = 0; i < mRunning.size(); ++i)
+	{
+	    total += ((Ticket) mRunning.get(i)).getProjected();
+	}
+
+	return total;
+    }
+
+    /**
+     * Wait until a conversion with the given configuration fits within the
+     * budget, and reserve memory for it.
+     * @param configKey The configuration of the conversion.
+     * @return A ticket that must be passed to <code>release()</code> once
+     * the conversion has finished.
+     */
+    synchronized Ticket acquire(String configKey)
+	throws InterruptedException
+    {
+	long estimate = getEstimate(configKey);
+
+	while (!mRunning.isEmpty() &&
+	       getProjectedUsage() + estimate > mBudget)
+	{
+	    // running processes may shrink as well as finish, so re-check
+	    // the projection each time it is sampled
+	    wait(100);
+	}
+
+	Ticket ticket = new Ticket(configKey, estimate);
+	mRunning.add(ticket);
+
+	return ticket;
+    }
+
+    /**
+     * Associate the sampled usage of a Prince process with an admitted
+     * conversion.
+     * @param ticket The ticket returned by <code>acquire()</code>.
+     * @param usage The usage of the Prince process, which must be watched
+     * by the ProcessMonitor until the ticket is released.
+     */
+    void attach(Ticket ticket, ProcessMonitor.Usage usage)
+    {
+	ticket.mUsage = usage;
+    }
+
+    /**
+     * Release the memory reserved for a conversion and update the estimate
+     * for its configuration with the peak memory that was observed.
+     * @param ticket The ticket returned by <code>acquire()</code>.
+     */
+    synchronized void release(Ticket ticket)
+    {
+	if (!mRunning.remove(ticket))
+	{
+	    return;
+	}
+
+	if (ticket.mUsage != null)
+	{
+	    long peak = ticket.mUsage.getPeakRss();
+
+	    if (peak > 0)
+	    {
+		Long previous = (Long) mEstimates.get(ticket.mConfigKey);
+		long estimate;
+
+		if (previous == null || peak >= previous.longValue())
+		{
+		    estimate = peak;
+		}
+		else
+		{
+		    estimate = (long) (previous.longValue() * (1 - DECAY) +
+				       peak * DECAY);
+		}
+
+		mEstimates.put(ticket.mConfigKey, Long.valueOf(estimate));
+	    }
+	}
+
+	notifyAll();
+    }
+
+    /**
+     * The memory reserved for an admitted conversion.
+     */
+    static class Ticket
+    {
+	private String mConfigKey;
+	private long mEstimate;
+	private volatile ProcessMonitor.Usage mUsage;
+
+	Ticket(String configKey, long estimate)
+	{
+	    mConfigKey = configKey;
+	    mEstimate = estimate;
+	    mUsage = null;
+	}
+
+	long getProjected()
+	{
+	    ProcessMonitor.Usage usage = mUsage;
+
+	    if (usage == null)
+	    {
+		return mEstimate;
+	    }
+
+	    return Math.max(mEstimate, usage.getRss());
+	}
+    }
+}
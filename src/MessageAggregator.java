@@ -0,0 +1,503 @@
+// Copyright (C) 2026 YesLogic Pty. Ltd.
+// All rights reserved.
+
+package com.princexml;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * MessageAggregator groups the messages of each conversion by type,
+ * location and text so that a message that Prince repeats many times is
+ * passed to the PrinceEvents interface once, followed by a summary with the
+ * number of times it was received once the conversion has finished. The
+ * number of messages and summaries passed to the PrinceEvents interface is
+ * also limited by a rate limit, which is applied separately to each
+ * conversion. Messages that do not fit within the limit are counted in a
+ * single warning at the end of the conversion.
+ * <p>
+ * Summaries are passed to <code>onRepeatedMessage()</code> if the events
+ * object implements PrinceAggregatedEvents, or else to
+ * <code>onMessage()</code> with the count appended to the message text.
+ * <p>
+ * Repeated messages are matched against the messages already seen without
+ * creating strings for them, so a conversion that produces thousands of
+ * identical warnings costs little more than one that produces a single
+ * warning. The same MessageAggregator may be shared by many Prince
+ * instances.
+ */
+public class MessageAggregator
+{
+    private static final int BUFSIZE = 8192;
+
+    private int mMaxDistinct;
+    private double mMessagesPerSecond;
+    private int mBurst;
+
+    /**
+     * Constructor for MessageAggregator.
+     * @param maxDistinct The maximum number of distinct messages that are
+     * grouped for each conversion. Further distinct messages are passed on
+     * individually, subject to the rate limit.
+     * @param messagesPerSecond The number of messages per second that may be
+     * passed to <code>onMessage()</code> for each conversion.
+     * @param burst The number of messages that may be passed to
+     * <code>onMessage()</code> at once before the rate limit applies.
+     */
+    public MessageAggregator(int maxDistinct, double messagesPerSecond,
+			     int burst)
+    {
+	mMaxDistinct = Math.max(1, maxDistinct);
+	mMessagesPerSecond = messagesPerSecond;
+	mBurst = Math.max(1, burst);
+    }
+
+    /**
+     * Get the maximum number of distinct messages grouped per conversion.
+     * @return The maximum number of distinct messages.
+     */
+    public int getMaxDistinct()
+    {
+	return mMaxDistinct;
+    }
+
+    /**
+     * Get the number of messages per second passed to
+     * <code>onMessage()</code> for each conversion.
+     * @return The message rate limit.
+     */
+    public double getMessagesPerSecond()
+    {
+	return mMessagesPerSecond;
+    }
+
+    /**
+     * Get the number of messages that may be passed to
+     * <code>onMessage()</code> at once.
+     * @return The burst size.
+     */
+    public int getBurst()
+    {
+	return mBurst;
+    }
+
+    /**
+     * Read the messages of one conversion from the stderr of Prince and
+     * dispatch them to the PrinceEvents interface.
+     * @param errMsgs The stderr of the Prince process.
+     * @param events The PrinceEvents interface, or null.
+     * @param log The PrinceLog to capture messages in, or null.
+     * @return The body of the "fin|" message, or an empty string if there
+     * was none.
+     */
+    String readMessages(InputStream errMsgs, PrinceEvents events,
+			PrinceLog log)
+	throws IOException
+    {
+	Session session = new Session(events, log);
+	Reader reader = new InputStreamReader(errMsgs);
+
+	char[] buf = new char[BUFSIZE];
+	int start = 0;
+	int end = 0;
+	int scanned = 0;
+
+	while (true)
+	{
+	    int eol = -1;
+
+	    for (int i = scanned; i < end; ++i)
+	    {
+		if (buf[i] == '\n')
+		{
+		    eol = i;
+		    break;
+		}
+	    }
+
+	    if (eol != -1)
+	    {
+		int len = eol - start;
+
+		if (len > 0 && buf[eol - 1] == '\r')
+		{
+		    --len;
+		}
+
+		session.handleLine(buf, start, len);
+		start = eol + 1;
+		scanned = start;
+		continue;
+	    }
+
+	    scanned = end;
+
+	    if (start > 0)
+	    {
+		// move the partial line to the start of the buffer
+		System.arraycopy(buf, start, buf, 0, end - start);
+		end -= start;
+		scanned -= start;
+		start = 0;
+	    }
+	    else if (end == buf.length)
+	    {
+		char[] larger = new char[buf.length * 2];
+		System.arraycopy(buf, 0, larger, 0, end);
+		buf = larger;
+	    }
+
+	    int charsRead = reader.read(buf, end, buf.length - end);
+
+	    if (charsRead == -1)
+	    {
+		if (end > start)
+		{
+		    session.handleLine(buf, start, end - start);
+		}
+
+		break;
+	    }
+
+	    end += charsRead;
+	}
+
+	session.finish();
+
+	return session.mResult;
+    }
+
+    /**
+     * The messages received during one conversion. Distinct messages are
+     * kept in an open-addressing hash table keyed on the message body.
+     */
+    private class Session
+    {
+	private PrinceEvents mEvents;
+	private PrinceLog mLog;
+	private String mResult;
+
+	private int mMask;
+	private int[] mSlots;
+	private int mCount;
+	private int[] mHashes;
+	private char[][] mBodies;
+	private String[] mTypes;
+	private String[] mLocations;
+	private String[] mTexts;
+	private int[] mRepeats;
+	private boolean[] mDispatched;
+	private long mDropped;
+
+	private double mTokens;
+	private long mLastRefill;
+
+	Session(PrinceEvents events, PrinceLog log)
+	{
+	    mEvents = events;
+	    mLog = log;
+	    mResult = "";
+
+	    int tableSize = 16;
+
+	    while (tableSize < mMaxDistinct * 2)
+	    {
+		tableSize <<= 1;
+	    }
+
+	    mMask = tableSize - 1;
+	    mSlots = new int[tableSize];
+	    mCount = 0;
+	    mDropped = 0;
+
+	    mTokens = mBurst;
+	    mLastRefill = System.nanoTime();
+	}
+
+	void handleLine(char[] buf, int off, int len)
+	{
+	    if (len < 4)
+	    {
+		// ignore too short log messages
+		return;
+	    }
+
+	    if (startsWith(buf, off, "msg|"))
+	    {
+		if (mLog != null)
+		{
+		    mLog.add(new String(buf, off + 4, len - 4));
+		}
+
+		if (mEvents != null)
+		{
+		    handleMessage(buf, off + 4, len - 4);
+		}
+	    }
+	    else if (startsWith(buf, off, "fin|"))
+	    {
+		mResult = new String(buf, off + 4, len - 4);
+	    }
+	    else
+	    {
+		// ignore unknown log messages
+	    }
+	}
+
+	/**
+	 * Handle a message body of the form "type|location|text", in the
+	 * same way as <code>Prince.handleMessage()</code>.
+	 */
+	private void handleMessage(char[] buf, int off, int len)
+	{
+	    if (len < 4)
+	    {
+		// ignore too short messages
+		return;
+	    }
+
+	    int locOffset = -1;
+
+	    for (int i = off + 4; i < off + len; ++i)
+	    {
+		if (buf[i] == '|')
+		{
+		    locOffset = i;
+		    break;
+		}
+	    }
+
+	    if (locOffset == -1)
+	    {
+		// ignore incorrectly formatted messages
+		return;
+	    }
+
+	    int hash = 0;
+
+	    for (int i = off; i < off + len; ++i)
+	    {
+		hash = 31 * hash + buf[i];
+	    }
+
+	    int slot = (hash ^ (hash >>> 16)) & mMask;
+
+	    while (mSlots[slot] != 0)
+	    {
+		int index = mSlots[slot] - 1;
+
+		if (mHashes[index] == hash &&
+		    bodyEquals(mBodies[index], buf, off, len))
+		{
+		    ++mRepeats[index];
+
+		    if (!mDispatched[index] && takeToken())
+		    {
+			mDispatched[index] = true;
+			mEvents.onMessage(mTypes[index], mLocations[index],
+					  mTexts[index]);
+		    }
+
+		    return;
+		}
+
+		slot = (slot + 1) & mMask;
+	    }
+
+	    if (mCount == mMaxDistinct)
+	    {
+		// the table is full, so pass the message on individually
+		if (takeToken())
+		{
+		    mEvents.onMessage(
+			new String(buf, off, 3),
+			new String(buf, off + 4, locOffset - off - 4),
+			new String(buf, locOffset, off + len - locOffset));
+		}
+		else
+		{
+		    ++mDropped;
+		}
+
+		return;
+	    }
+
+	    String msgType = new String(buf, off, 3);
+	    String msgLocation = new String(buf, off + 4, locOffset - off - 4);
+	    String msgText = new String(buf, locOffset, off + len - locOffset);
+
+	    if (mHashes == null)
+	    {
+		int capacity = Math.min(mMaxDistinct, 64);
+
+		mHashes = new int[capacity];
+		mBodies = new char[capacity][];
+		mTypes = new String[capacity];
+		mLocations = new String[capacity];
+		mTexts = new String[capacity];
+		mRepeats = new int[capacity];
+		mDispatched = new boolean[capacity];
+	    }
+	    else if (mCount == mHashes.length)
+	    {
+		grow(Math.min(mMaxDistinct, mCount * 2));
+	    }
+
+	    int index = mCount++;
+	    char[] body = new char[len];
+
+	    System.arraycopy(buf, off, body, 0, len);
+
+	    mHashes[index] = hash;
+	    mBodies[index] = body;
+	    mTypes[index] = msgType;
+	    mLocations[index] = msgLocation;
+	    mTexts[index] = msgText;
+	    mRepeats[index] = 1;
+	    mDispatched[index] = false;
+	    mSlots[slot] = index + 1;
+
+	    if (takeToken())
+	    {
+		mDispatched[index] = true;
+		mEvents.onMessage(msgType, msgLocation, msgText);
+	    }
+	}
+
+	/**
+	 * Report the messages that were repeated or held back by the rate
+	 * limit, in the order in which they were first received. Summaries
+	 * are subject to the rate limit as well, and those that do not fit
+	 * are added to the count of suppressed messages.
+	 */
+	void finish()
+	{
+	    if (mEvents == null)
+	    {
+		return;
+	    }
+
+	    for (int i = 0; i < mCount; ++i)
+	    {
+		int dispatched = (mDispatched[i] ? 1 : 0);
+
+		if (mRepeats[i] == dispatched)
+		{
+		    continue;
+		}
+
+		if (!takeToken())
+		{
+		    mDropped += mRepeats[i] - dispatched;
+		    continue;
+		}
+
+		if (mEvents instanceof PrinceAggregatedEvents)
+		{
+		    ((PrinceAggregatedEvents) mEvents).onRepeatedMessage(
+			mTypes[i], mLocations[i], mTexts[i], mRepeats[i]);
+		}
+		else if (mRepeats[i] == 1)
+		{
+		    mEvents.onMessage(mTypes[i], mLocations[i], mTexts[i]);
+		}
+		else
+		{
+		    mEvents.onMessage(mTypes[i], mLocations[i], mTexts[i] +
+				      " (repeated " + mRepeats[i] + " times)");
+		}
+	    }
+
+	    if (mDropped > 0)
+	    {
+		// message text starts at the separator, as in handleMessage()
+		mEvents.onMessage("wrn", "", "|" + mDropped +
+				  " messages were suppressed by the message" +
+				  " rate limit");
+	    }
+	}
+
+	/**
+	 * Take a token from the bucket of the rate limit, which is refilled
+	 * at the configured rate up to the burst size.
+	 */
+	private boolean takeToken()
+	{
+	    long now = System.nanoTime();
+
+	    mTokens = Math.min(mBurst, mTokens + (now - mLastRefill) *
+			       mMessagesPerSecond / 1e9);
+	    mLastRefill = now;
+
+	    if (mTokens < 1)
+	    {
+		return false;
+	    }
+
+	    mTokens -= 1;
+
+	    return true;
+	}
+
+	private void grow(int capacity)
+	{
+	    int[] hashes = new int[capacity];
+	    char[][] bodies = new char[capacity][];
+	    String[] types = new String[capacity];
+	    String[] locations = new String[capacity];
+	    String[] texts = new String[capacity];
+	    int[] repeats = new int[capacity];
+	    boolean[] dispatched = new boolean[capacity];
+
+	    System.arraycopy(mHashes, 0, hashes, 0, mCount);
+	    System.arraycopy(mBodies, 0, bodies, 0, mCount);
+	    System.arraycopy(mTypes, 0, types, 0, mCount);
+	    System.arraycopy(mLocations, 0, locations, 0, mCount);
+	    System.arraycopy(mTexts, 0, texts, 0, mCount);
+	    System.arraycopy(mRepeats, 0, repeats, 0, mCount);
+	    System.arraycopy(mDispatched, 0, dispatched, 0, mCount);
+
+	    mHashes = hashes;
+	    mBodies = bodies;
+	    mTypes = types;
+	    mLocations = locations;
+	    mTexts = texts;
+	    mRepeats = repeats;
+	    mDispatched = dispatched;
+	}
+    }
+
+    private static boolean startsWith(char[] buf, int off, String prefix)
+    {
+	for (int i = 0; i < prefix.length(); ++i)
+	{
+	    if (buf[off + i] != prefix.charAt(i))
+	    {
+		return false;
+	    }
+	}
+
+	return true;
+    }
+
+    private static boolean bodyEquals(char[] body, char[] buf, int off,
+				      int len)
+    {
+	if (body.length != len)
+	{
+	    return false;
+	}
+
+	for (int i = 0; i < len; ++i)
+	{
+	    if (body[i] != buf[off + i])
+	    {
+		return false;
+	    }
+	}
+
+	return true;
+    }
+}
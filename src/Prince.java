@@ -4,10 +4,15 @@
 package com.princexml;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.SequenceInputStream;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -17,7 +22,10 @@ import java.util.List;
  */
 public class Prince
 {
+    private static long sLastJobId = 0;
+
     private PrinceEvents mEvents;
+    private MessageAggregator mMessageAggregator;
     private String mExePath;
     private ArrayList mStyleSheets;
     private ArrayList mScripts;
@@ -34,11 +42,15 @@ public class Prince
     private String mHttpUsername;
     private String mHttpPassword;
     private String mHttpProxy;
+    private HttpCacheProxy mHttpCacheProxy;
 
     // Log settings
     private String mLogFile;
     private boolean mVerbose;
     private boolean mDebug;
+    private int mLogCapacity;
+    private PrinceLogWriter mLogWriter;
+    private ThreadLocal mLastResult;
 
     // PDF settings
     private boolean mEmbedFonts;
@@ -58,6 +70,13 @@ public class Prince
     // Other command-line options
     private String mOptions;
 
+    // Resource settings
+    private MemoryBudget mMemoryBudget;
+    private CorePlacement mCorePlacement;
+    private boolean mAccounting;
+    private PrinceStats mStats;
+    private StagingArea mStagingArea;
+
     /** Constructor for Prince.
      * @param exePath The path of the Prince executable. (For example, this
      * may be <code>C:\Program&#xA0;Files\Prince\engine\bin\prince.exe</code>
@@ -83,6 +102,7 @@ public class Prince
     private void init(String exePath, PrinceEvents events)
     {
 	mEvents = events;
+	mMessageAggregator = null;
 	mExePath = exePath;
 	mStyleSheets = new ArrayList();
 	mScripts = new ArrayList();
@@ -99,11 +119,15 @@ public class Prince
 	mHttpUsername = null;
 	mHttpPassword = null;
 	mHttpProxy = null;
+	mHttpCacheProxy = null;
 
 	// Log settings
 	mLogFile = null;
 	mVerbose = false;
 	mDebug = false;
+	mLogCapacity = 0;
+	mLogWriter = null;
+	mLastResult = new ThreadLocal();
 	
 	// PDF settings
 	mEmbedFonts = true;
@@ -122,6 +146,13 @@ public class Prince
 
 	// Other command-line options
 	mOptions = null;
+
+	// Resource settings
+	mMemoryBudget = null;
+	mCorePlacement = null;
+	mAccounting = false;
+	mStats = null;
+	mStagingArea = null;
     }
 
     /**
@@ -210,6 +241,60 @@ public class Prince
 	mLogFile = logfile;
     }
 
+    /**
+     * Capture the error/warning messages of each conversion in memory. The
+     * messages are kept in a separate PrinceLog for each conversion, so
+     * concurrent conversions do not interfere with each other, and can be
+     * obtained from the result returned by <code>getLastResult()</code>.
+     * Only the most recent messages are kept if a conversion produces more
+     * than the specified number. This does not affect the operation of the
+     * PrinceEvents interface or the log file specified by
+     * <code>setLog()</code>.
+     * @param maxMessages The maximum number of messages to keep for each
+     * conversion, or 0 to disable log capture.
+     */
+    public void setLogCapture(int maxMessages)
+    {
+	mLogCapacity = maxMessages;
+    }
+
+    /**
+     * Specify a PrinceLogWriter that the captured messages of each
+     * conversion will be passed to once the conversion has finished. The
+     * PrinceLogWriter writes them to a rolling log file in the background,
+     * and may be shared by many Prince instances. This has no effect unless
+     * log capture has been enabled with <code>setLogCapture()</code>.
+     * @param logWriter The PrinceLogWriter, or null to disable it.
+     */
+    public void setLogWriter(PrinceLogWriter logWriter)
+    {
+	mLogWriter = logWriter;
+    }
+
+    /**
+     * Specify a MessageAggregator that groups repeated messages and limits
+     * the rate at which they are passed to the PrinceEvents interface. The
+     * MessageAggregator may be shared by many Prince instances. Captured
+     * logs still contain every message.
+     * @param aggregator The MessageAggregator, or null to pass every message
+     * to the PrinceEvents interface as it is received.
+     */
+    public void setMessageAggregator(MessageAggregator aggregator)
+    {
+	mMessageAggregator = aggregator;
+    }
+
+    /**
+     * Get the result of the most recent conversion made by the current
+     * thread using this Prince instance.
+     * @return The result, or null if the current thread has not made any
+     * conversions.
+     */
+    public PrinceResult getLastResult()
+    {
+	return (PrinceResult) mLastResult.get();
+    }
+
     /**
      * Enable verbose logging of informative messages.
      * @param verbose True to enable verbose logging.
@@ -313,6 +398,26 @@ public class Prince
 	mHttpProxy = proxy;
     }
 
+    /**
+     * Specify an HttpCacheProxy that Prince will fetch remote resources
+     * through, so that resources shared by many documents are downloaded
+     * once. The proxy is started if it is not already running, and is used
+     * instead of any proxy given to <code>setHttpProxy()</code>; use
+     * <code>HttpCacheProxy.setUpstreamProxy()</code> if the network
+     * requires a proxy.
+     * @param cacheProxy The HttpCacheProxy, or null to not use one.
+     */
+    public void setHttpCacheProxy(HttpCacheProxy cacheProxy)
+	throws IOException
+    {
+	if (cacheProxy != null)
+	{
+	    cacheProxy.start();
+	}
+
+	mHttpCacheProxy = cacheProxy;
+    }
+
     /**
      * Specify whether fonts should be embedded in the output PDF file. Fonts
      * will be embedded by default unless explicitly disabled.
@@ -406,6 +511,65 @@ public class Prince
 	mOptions = options;
     }
 
+    /**
+     * Specify a MemoryBudget that limits the total resident memory of the
+     * Prince processes. Conversions will wait until they fit within the
+     * budget before Prince is started. The same MemoryBudget should be shared
+     * by all of the Prince instances in the application.
+     * @param memoryBudget The MemoryBudget, or null to start conversions
+     * without waiting.
+     */
+    public void setMemoryBudget(MemoryBudget memoryBudget)
+    {
+	mMemoryBudget = memoryBudget;
+    }
+
+    /**
+     * Specify a CorePlacement that pins each Prince process to its own set
+     * of CPU cores. The same CorePlacement should be shared by all of the
+     * Prince instances in the application.
+     * @param corePlacement The CorePlacement, or null to let the operating
+     * system schedule Prince processes on any core.
+     */
+    public void setCorePlacement(CorePlacement corePlacement)
+    {
+	mCorePlacement = corePlacement;
+    }
+
+    /**
+     * Specify whether the CPU time and peak memory of each Prince process
+     * should be measured. These are sampled from /proc on Linux and reported
+     * in the result returned by <code>getLastResult()</code>. The wall time
+     * and input and output sizes are always reported.
+     * @param accounting True to measure CPU time and peak memory.
+     */
+    public void setResourceAccounting(boolean accounting)
+    {
+	mAccounting = accounting;
+    }
+
+    /**
+     * Specify a PrinceStats that the result of each conversion will be
+     * added to. This also enables resource accounting. The same PrinceStats
+     * may be shared by many Prince instances.
+     * @param stats The PrinceStats, or null to not record results.
+     */
+    public void setStats(PrinceStats stats)
+    {
+	mStats = stats;
+    }
+
+    /**
+     * Specify the StagingArea used by <code>convert(InputStream, String,
+     * OutputStream)</code> to pass large documents to Prince as files.
+     * @param stagingArea The StagingArea, or null to use the default
+     * StagingArea.
+     */
+    public void setStagingArea(StagingArea stagingArea)
+    {
+	mStagingArea = stagingArea;
+    }
+
     /**
      * Convert an XML or HTML file to a PDF file. The name of the output PDF
      * file will be the same as the name of the input file but with an
@@ -421,9 +585,19 @@ public class Prince
 	cmdline.add("--server");
 	cmdline.add(xmlPath);
         
-	Process process = Util.invokeProcess(cmdline);
-	
-	return readMessages(process);
+	Job job = startJob(cmdline, xmlPath);
+
+	try
+	{
+	    job.mBytesIn = getFileSize(xmlPath);
+	    job.mOutputPath = getDefaultOutputPath(xmlPath);
+
+	    return readMessages(job);
+	}
+	finally
+	{
+	    endJob(job);
+	}
     }
     
     /**
@@ -441,9 +615,19 @@ public class Prince
 	cmdline.add(xmlPath);
 	cmdline.add(pdfPath);
         
-	Process process = Util.invokeProcess(cmdline);
-	
-	return readMessages(process);
+	Job job = startJob(cmdline, xmlPath);
+
+	try
+	{
+	    job.mBytesIn = getFileSize(xmlPath);
+	    job.mOutputPath = pdfPath;
+
+	    return readMessages(job);
+	}
+	finally
+	{
+	    endJob(job);
+	}
     }
 
     /**
@@ -460,15 +644,35 @@ public class Prince
 	cmdline.add("--server");
 	cmdline.add("--output="+pdfPath);
 
+	StringBuffer input = new StringBuffer();
+	long bytesIn = 0;
+
 	for (int i = 0; i < xmlPaths.size(); ++i)
 	{
 	    String xmlPath = (String) xmlPaths.get(i);
 	    cmdline.add(xmlPath);
+
+	    if (i > 0)
+	    {
+		input.append(' ');
+	    }
+	    input.append(xmlPath);
+	    bytesIn += Math.max(0, getFileSize(xmlPath));
 	}
         
-	Process process = Util.invokeProcess(cmdline);
-	
-	return readMessages(process);
+	Job job = startJob(cmdline, input.toString());
+
+	try
+	{
+	    job.mBytesIn = bytesIn;
+	    job.mOutputPath = pdfPath;
+
+	    return readMessages(job);
+	}
+	finally
+	{
+	    endJob(job);
+	}
     }
 
     /**
@@ -498,17 +702,26 @@ public class Prince
 	cmdline.add("-o");
 	cmdline.add("-");
 
-	Process process = Util.invokeProcess(cmdline);
+	Job job = startJob(cmdline, xmlPath);
 
-	InputStream outputFromPrince = process.getInputStream();
+	try
+	{
+	    InputStream outputFromPrince = job.mProcess.getInputStream();
+
+	    job.mBytesIn = getFileSize(xmlPath);
 
-	// copy the PDF output from Prince stdout
-	Util.copyInputToOutput(outputFromPrince, pdfOutput);
+	    // copy the PDF output from Prince stdout
+	    job.mBytesOut = Util.copyAndCount(outputFromPrince, pdfOutput);
 
-	// close Prince stdout
-        outputFromPrince.close();
+	    // close Prince stdout
+	    outputFromPrince.close();
 
-	return readMessages(process);
+	    return readMessages(job);
+	}
+	finally
+	{
+	    endJob(job);
+	}
     }
     
     /**
@@ -541,32 +754,466 @@ public class Prince
 	cmdline.add("--silent");
 	cmdline.add("-");
 
-	Process process = Util.invokeProcess(cmdline);
+	Job job = startJob(cmdline, "-");
 
-	OutputStream inputToPrince = process.getOutputStream();
-	InputStream outputFromPrince = process.getInputStream();
+	try
+	{
+	    OutputStream inputToPrince = job.mProcess.getOutputStream();
+	    InputStream outputFromPrince = job.mProcess.getInputStream();
 
-	// copy the XML input to Prince stdin
-	Util.copyInputToOutput(xmlInput, inputToPrince);
+	    // copy the XML input to Prince stdin
+	    job.mBytesIn = Util.copyAndCount(xmlInput, inputToPrince);
 
-	// close Prince stdin
-	inputToPrince.close();
+	    // close Prince stdin
+	    inputToPrince.close();
 
-	// copy the PDF output from Prince stdout
-	Util.copyInputToOutput(outputFromPrince, pdfOutput);
+	    // copy the PDF output from Prince stdout
+	    job.mBytesOut = Util.copyAndCount(outputFromPrince, pdfOutput);
 
-	// close Prince stdout
-        outputFromPrince.close();
+	    // close Prince stdout
+	    outputFromPrince.close();
 
-	return readMessages(process);
+	    return readMessages(job);
+	}
+	finally
+	{
+	    endJob(job);
+	}
     }
     
+    /**
+     * Convert an XML or HTML document held in memory to a PDF file. This is
+     * equivalent to <code>convert(InputStream, String, OutputStream)</code>.
+     * @param xmlData The XML or HTML document.
+     * @param xmlName The filename or URL of the document, or null.
+     * @param pdfOutput The OutputStream to which Prince will write the PDF
+     * output.
+     * @return True if a PDF file was generated successfully.
+     */
+    public boolean convert(byte[] xmlData, String xmlName,
+			   OutputStream pdfOutput)
+	throws IOException
+    {
+	return convert(new ByteArrayInputStream(xmlData), xmlName, pdfOutput);
+    }
+
+    /**
+     * Convert an XML or HTML document to a PDF file, choosing the fastest
+     * way to pass the document to Prince. Small documents are piped to
+     * Prince through stdin. Documents at least as large as the threshold of
+     * the StagingArea are written to a staged file, usually on a memory
+     * backed file system, and passed to Prince by filename.
+     * <p>
+     * The name of the document is used in place of a filename. If its
+     * extension is ".html" or ".htm" and the input type has not been set,
+     * the document is always staged with the same extension, so that Prince
+     * detects HTML as it does for files. If the StagingArea is full, the
+     * document is piped with the input type set to HTML instead.
+     * <p>
+     * Relative URLs in the document are resolved against the base URL set
+     * by <code>setBaseURL()</code>, or else against the name of the
+     * document, or else against the current directory.
+     * <p>
+     * As with the other methods that write to an OutputStream, no
+     * error/warning messages will be returned via the PrinceEvents interface.
+     * @param xmlInput The InputStream from which the XML or HTML document
+     * will be read.
+     * @param xmlName The filename or URL of the document, or null.
+     * @param pdfOutput The OutputStream to which Prince will write the PDF
+     * output.
+     * @return True if a PDF file was generated successfully.
+     */
+    public boolean convert(InputStream xmlInput, String xmlName,
+			   OutputStream pdfOutput)
+	throws IOException
+    {
+	StagingArea staging = (mStagingArea != null
+			       ? mStagingArea : StagingArea.getDefault());
+	String baseURL = (mBaseURL != null ? mBaseURL : xmlName);
+	String suffix = getSuffix(xmlName);
+	boolean autoInput = (mInputType == null || mInputType.equals("auto"));
+	boolean htmlName = (suffix.equalsIgnoreCase(".html") ||
+			    suffix.equalsIgnoreCase(".htm"));
+
+	// read up to the threshold to find out whether the document is small
+	byte[] prefix = readPrefix(xmlInput, staging.getThreshold());
+
+	if (prefix.length < staging.getThreshold() && !(autoInput && htmlName))
+	{
+	    InputStream input = new SequenceInputStream(
+		new ByteArrayInputStream(prefix), xmlInput);
+
+	    return pipeDocument(input, xmlName, baseURL, mInputType,
+				pdfOutput);
+	}
+
+	if (suffix.length() == 0)
+	{
+	    suffix = ("html".equals(mInputType) ? ".html" : ".xml");
+	}
+
+	StagingArea.Entry entry = staging.stage(prefix, xmlInput, suffix);
+
+	try
+	{
+	    if (!entry.isComplete())
+	    {
+		InputStream input = entry.openReplay(xmlInput);
+
+		try
+		{
+		    return pipeDocument(input, xmlName, baseURL,
+					(autoInput && htmlName
+					 ? "html" : mInputType),
+					pdfOutput);
+		}
+		finally
+		{
+		    input.close();
+		}
+	    }
+
+	    if (baseURL == null)
+	    {
+		baseURL = new File("").getAbsoluteFile().toURI().toString();
+	    }
+
+	    List cmdline = getCommandLine(baseURL, mInputType);
+
+	    cmdline.add("--server");
+	    cmdline.add("--silent");
+	    cmdline.add(entry.getFile().getPath());
+	    cmdline.add("-o");
+	    cmdline.add("-");
+
+	    Job job = startJob(cmdline, (xmlName != null ? xmlName : "-"));
+
+	    try
+	    {
+		InputStream outputFromPrince = job.mProcess.getInputStream();
+
+		job.mBytesIn = entry.getSize();
+
+		// copy the PDF output from Prince stdout
+		job.mBytesOut = Util.copyAndCount(outputFromPrince, pdfOutput);
+
+		// close Prince stdout
+		outputFromPrince.close();
+
+		return readMessages(job);
+	    }
+	    finally
+	    {
+		endJob(job);
+	    }
+	}
+	finally
+	{
+	    entry.delete();
+	}
+    }
+
+    /**
+     * Pipe a document to Prince through stdin.
+     */
+    private boolean pipeDocument(InputStream xmlInput, String xmlName,
+				 String baseURL, String inputType,
+				 OutputStream pdfOutput)
+	throws IOException
+    {
+	List cmdline = getCommandLine(baseURL, inputType);
+
+	cmdline.add("--server");
+	cmdline.add("--silent");
+	cmdline.add("-");
+
+	Job job = startJob(cmdline, (xmlName != null ? xmlName : "-"));
+
+	try
+	{
+	    OutputStream inputToPrince = job.mProcess.getOutputStream();
+	    InputStream outputFromPrince = job.mProcess.getInputStream();
+
+	    // copy the XML input to Prince stdin
+	    job.mBytesIn = Util.copyAndCount(xmlInput, inputToPrince);
+
+	    // close Prince stdin
+	    inputToPrince.close();
+
+	    // copy the PDF output from Prince stdout
+	    job.mBytesOut = Util.copyAndCount(outputFromPrince, pdfOutput);
+
+	    // close Prince stdout
+	    outputFromPrince.close();
+
+	    return readMessages(job);
+	}
+	finally
+	{
+	    endJob(job);
+	}
+    }
+
+    /**
+     * Read the start of a document, up to the given number of bytes.
+     * @return The bytes read, which are fewer than the limit only if the
+     * end of the document was reached.
+     */
+    private static byte[] readPrefix(InputStream input, long limit)
+	throws IOException
+    {
+	ByteArrayOutputStream prefix = new ByteArrayOutputStream();
+	byte[] buf = new byte[4096];
+
+	while (prefix.size() < limit)
+	{
+	    int len = (int) Math.min(buf.length, limit - prefix.size());
+	    int bytesRead = input.read(buf, 0, len);
+
+	    if (bytesRead == -1)
+	    {
+		break;
+	    }
+
+	    prefix.write(buf, 0, bytesRead);
+	}
+
+	return prefix.toByteArray();
+    }
+
+    /**
+     * Get the filename extension of a document name, including the dot.
+     * @param xmlName The filename or URL of the document, or null.
+     * @return The extension, or an empty string if there is none.
+     */
+    private static String getSuffix(String xmlName)
+    {
+	if (xmlName == null)
+	{
+	    return "";
+	}
+
+	String name = xmlName;
+	int end = name.length();
+
+	// ignore the query and fragment of a URL
+	if (name.indexOf('?') != -1)
+	{
+	    end = Math.min(end, name.indexOf('?'));
+	}
+
+	if (name.indexOf('#') != -1)
+	{
+	    end = Math.min(end, name.indexOf('#'));
+	}
+
+	name = name.substring(0, end);
+
+	int dot = name.lastIndexOf('.');
+	int slash = Math.max(name.lastIndexOf('/'),
+			     name.lastIndexOf(File.separatorChar));
+
+	if (dot > slash + 1 && name.length() - dot <= 6)
+	{
+	    return name.substring(dot);
+	}
+
+	return "";
+    }
+
+    /**
+     * Start a Prince process for a conversion. If a memory budget has been
+     * specified, this waits until the conversion fits within it. If a core
+     * placement has been specified, Prince is pinned to the least loaded
+     * set of cores.
+     * @param cmdline The command line used to call Prince.
+     * @param input The input filename(s), used to label the result.
+     * @return The new Job, which must be passed to <code>endJob()</code>.
+     */
+    private Job startJob(List cmdline, String input)
+	throws IOException
+    {
+	Job job = new Job(input, getConfigKey());
+
+	// the job releases to the objects it acquired from, even if the
+	// settings are changed while it is running
+	job.mMemoryBudget = mMemoryBudget;
+	job.mCorePlacement = mCorePlacement;
+
+	if (job.mMemoryBudget != null)
+	{
+	    try
+	    {
+		job.mTicket = job.mMemoryBudget.acquire(job.mConfigKey);
+	    }
+	    catch (InterruptedException e)
+	    {
+		Thread.currentThread().interrupt();
+		throw new InterruptedIOException(
+			"interrupted while waiting for memory budget");
+	    }
+	}
+
+	if (job.mCorePlacement != null)
+	{
+	    job.mSlot = job.mCorePlacement.acquire();
+	    cmdline = job.mCorePlacement.wrapCommandLine(job.mSlot, cmdline);
+	}
+
+	try
+	{
+	    job.mProcess = Util.invokeProcess(cmdline);
+	    job.mStartTime = System.nanoTime();
+	}
+	catch (IOException e)
+	{
+	    endJob(job);
+	    throw e;
+	}
+
+	if (mAccounting || mStats != null || job.mMemoryBudget != null)
+	{
+	    job.mUsage = ProcessMonitor.getInstance().watch(job.mProcess);
+	}
+
+	if (job.mTicket != null)
+	{
+	    job.mMemoryBudget.attach(job.mTicket, job.mUsage);
+	}
+
+	return job;
+    }
+
+    /**
+     * Release the resources held by a conversion. If the conversion did not
+     * finish normally, for example because its output could not be written,
+     * the Prince process is killed so that it does not keep running outside
+     * of the memory budget and core placement.
+     * @param job The Job returned by <code>startJob()</code>.
+     */
+    private void endJob(Job job)
+    {
+	if (job.mProcess != null && !job.mFinished)
+	{
+	    job.mProcess.destroy();
+	}
+
+	if (job.mTicket != null)
+	{
+	    job.mMemoryBudget.release(job.mTicket);
+	    job.mTicket = null;
+	}
+
+	if (job.mSlot != null)
+	{
+	    job.mCorePlacement.release(job.mSlot);
+	    job.mSlot = null;
+	}
+
+	if (job.mUsage != null)
+	{
+	    ProcessMonitor.getInstance().unwatch(job.mUsage);
+	}
+    }
+
+    /**
+     * Get the size of an input or output file.
+     * @param path The filename.
+     * @return The size in bytes, or -1 if the file does not exist, for
+     * example because it is a URL.
+     */
+    private static long getFileSize(String path)
+    {
+	File file = new File(path);
+
+	return (file.isFile() ? file.length() : -1);
+    }
+
+    /**
+     * Get the name of the PDF file that Prince writes when no output
+     * filename is given, which is the input filename with a ".pdf"
+     * extension.
+     * @param xmlPath The filename of the input document.
+     * @return The filename of the output PDF file.
+     */
+    private static String getDefaultOutputPath(String xmlPath)
+    {
+	int dot = xmlPath.lastIndexOf('.');
+	int slash = Math.max(xmlPath.lastIndexOf('/'),
+			     xmlPath.lastIndexOf(File.separatorChar));
+
+	if (dot > slash + 1)
+	{
+	    return xmlPath.substring(0, dot) + ".pdf";
+	}
+
+	return xmlPath + ".pdf";
+    }
+
+    /**
+     * Get a key identifying the configuration of this Prince instance, which
+     * is its command line without the executable path. Options that usually
+     * change from one document to the next, such as the base URL, are left
+     * out so that conversions with the same settings share a key. The key is
+     * reported in results and statistics, so the values of password options
+     * are masked.
+     * @return The configuration key.
+     */
+    private String getConfigKey()
+    {
+	List cmdline = getCommandLine();
+	StringBuffer key = new StringBuffer();
+
+	for (int i = 1; i < cmdline.size(); ++i)
+	{
+	    String arg = (String) cmdline.get(i);
+
+	    if (mOptions != null && i == cmdline.size() - 1)
+	    {
+		// the extra options string may hold several options
+		arg = arg.replaceAll("(^|\\s)--(baseurl|log|http-proxy)=\\S*",
+				     "").trim();
+	    }
+	    else if (arg.startsWith("--baseurl=") ||
+		     arg.startsWith("--log=") ||
+		     arg.startsWith("--http-proxy="))
+	    {
+		continue;
+	    }
+
+	    arg = arg.replaceAll("(--[A-Za-z-]*password=)\\S*", "$1***");
+
+	    if (arg.length() > 0)
+	    {
+		if (key.length() > 0)
+		{
+		    key.append(' ');
+		}
+
+		key.append(arg);
+	    }
+	}
+
+	return key.toString();
+    }
+
     /**
      * Get the command line used to call Prince. The command line is returned
      * as a list of strings rather than a single string in order to avoid
      * potential problems with arguments that contain spaces.
      */
     private List getCommandLine()
+    {
+	return getCommandLine(mBaseURL, mInputType);
+    }
+
+    /**
+     * Get the command line used to call Prince, with the given base URL and
+     * input type in place of the ones set on this Prince instance.
+     * @param baseURL The base URL, or null.
+     * @param inputType "auto", "html", "xml", or null.
+     */
+    private List getCommandLine(String baseURL, String inputType)
     {
 	List cmdline = new ArrayList();
 
@@ -584,14 +1231,14 @@ public class Prince
 	    cmdline.add("--script=" + jsPath);
 	}
 
-	if (mInputType != null && !mInputType.equals("auto"))
+	if (inputType != null && !inputType.equals("auto"))
 	{
-	    cmdline.add("--input="+mInputType);
+	    cmdline.add("--input="+inputType);
 	}
 
-	if (mBaseURL != null)
+	if (baseURL != null)
 	{
-	    cmdline.add("--baseurl="+mBaseURL);
+	    cmdline.add("--baseurl="+baseURL);
 	}
 
 	if (mFileRoot != null)
@@ -624,7 +1271,11 @@ public class Prince
 	    cmdline.add("--http-password="+mHttpPassword);
 	}
 
-	if (mHttpProxy != null)
+	if (mHttpCacheProxy != null && mHttpCacheProxy.getProxyURL() != null)
+	{
+	    cmdline.add("--http-proxy="+mHttpCacheProxy.getProxyURL());
+	}
+	else if (mHttpProxy != null)
 	{
 	    cmdline.add("--http-proxy="+mHttpProxy);
 	}
@@ -706,24 +1357,35 @@ public class Prince
     /**
      * Read all of the messages from Prince stderr. Error and warning messages
      * will be dispatched to the PrinceEvents interface if one has been
-     * provided.
-     * @param process The Prince process.
+     * provided, and captured in a PrinceLog if log capture is enabled.
+     * @param job The conversion job.
      * @return True if Prince finished successfully.
      */
-    private boolean readMessages(Process process)
+    private boolean readMessages(Job job)
 	throws IOException
     {
+	PrinceLog log = (mLogCapacity > 0 ? new PrinceLog(mLogCapacity) : null);
+
         String line;
         String result;
         InputStream errMsgs;
         BufferedReader bufRead;
         
-        errMsgs = process.getErrorStream();
+        errMsgs = job.mProcess.getErrorStream();
         bufRead = new BufferedReader(new InputStreamReader(errMsgs));
         
         line = "";
         result = "";
-        line = bufRead.readLine();
+
+	if (mMessageAggregator != null)
+	{
+	    result = mMessageAggregator.readMessages(errMsgs, mEvents, log);
+	    line = null;
+	}
+	else
+	{
+	    line = bufRead.readLine();
+	}
 
         while (line != null)
 	{
@@ -732,9 +1394,17 @@ public class Prince
 		String msgTag = line.substring(0, 4);
 		String msgBody = line.substring(4);
 	    
-		if (mEvents != null && msgTag.equals("msg|"))
+		if (msgTag.equals("msg|"))
 		{
-		    handleMessage(msgBody);
+		    if (log != null)
+		    {
+			log.add(msgBody);
+		    }
+
+		    if (mEvents != null)
+		    {
+			handleMessage(msgBody);
+		    }
 		}
 		else if (msgTag.equals("fin|"))
 		{
@@ -753,7 +1423,55 @@ public class Prince
             line = bufRead.readLine();
         }
 
-        return result.equals("success");
+	// Prince has closed stderr, so it has finished with the job
+	job.mFinished = true;
+
+	long wallTime = (System.nanoTime() - job.mStartTime) / 1000000;
+	boolean success = result.equals("success");
+	PrinceResult princeResult = new PrinceResult(
+	    nextJobId(), job.mInput, job.mConfigKey, success, log);
+
+	long cpuTime = -1;
+	long peakMemory = -1;
+
+	if (job.mUsage != null)
+	{
+	    // Prince has closed stderr, so take a last sample before it exits
+	    job.mUsage.sample();
+	    cpuTime = job.mUsage.getCpuTime();
+	    peakMemory = job.mUsage.getPeakRss();
+	}
+
+	if (job.mOutputPath != null)
+	{
+	    job.mBytesOut = getFileSize(job.mOutputPath);
+	}
+
+	princeResult.setResourceUsage(wallTime, cpuTime, peakMemory,
+				      job.mBytesIn, job.mBytesOut);
+
+	mLastResult.set(princeResult);
+
+	if (mStats != null)
+	{
+	    mStats.record(princeResult);
+	}
+
+	if (log != null && mLogWriter != null)
+	{
+	    mLogWriter.submit(princeResult);
+	}
+
+        return success;
+    }
+
+    /**
+     * Allocate a job number that identifies a conversion.
+     * @return The new job number.
+     */
+    private static synchronized long nextJobId()
+    {
+	return ++sLastJobId;
     }
     
     /**
@@ -787,5 +1505,42 @@ public class Prince
 	    // ignore too short messages
 	}
     }
+
+    /**
+     * The state of a single conversion.
+     */
+    private static class Job
+    {
+	private String mInput;
+	private String mConfigKey;
+	private Process mProcess;
+	private MemoryBudget mMemoryBudget;
+	private MemoryBudget.Ticket mTicket;
+	private CorePlacement mCorePlacement;
+	private CorePlacement.Slot mSlot;
+	private ProcessMonitor.Usage mUsage;
+	private long mStartTime;
+	private long mBytesIn;
+	private long mBytesOut;
+	private String mOutputPath;
+	private boolean mFinished;
+
+	Job(String input, String configKey)
+	{
+	    mInput = input;
+	    mConfigKey = configKey;
+	    mProcess = null;
+	    mMemoryBudget = null;
+	    mTicket = null;
+	    mCorePlacement = null;
+	    mSlot = null;
+	    mUsage = null;
+	    mStartTime = 0;
+	    mBytesIn = -1;
+	    mBytesOut = -1;
+	    mOutputPath = null;
+	    mFinished = false;
+	}
+    }
 }
 
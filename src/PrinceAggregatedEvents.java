@@ -0,0 +1,27 @@
+// Copyright (C) 2026 YesLogic Pty. Ltd.
+// All rights reserved.
+
+package com.princexml;
+
+/**
+ * The PrinceAggregatedEvents interface extends PrinceEvents to receive
+ * summaries of repeated messages when a MessageAggregator is in use.
+ */
+public interface PrinceAggregatedEvents extends PrinceEvents
+{
+    /**
+     * This method will be called once a conversion has finished for each
+     * distinct message that was received more than once, or that was not
+     * passed to <code>onMessage()</code> because of the message rate limit.
+     * These calls are also subject to the rate limit, and messages whose
+     * summaries do not fit are only included in the count of suppressed
+     * messages.
+     * @param msgType The type of the message ("inf", "wrn", or "err").
+     * @param msgLocation The name of the file that the message refers to.
+     * This may be empty if the message does not refer to any particular file.
+     * @param msgText The text of the message.
+     * @param count The number of times the message was received.
+     */
+    void onRepeatedMessage(String msgType, String msgLocation, String msgText,
+			   int count);
+}
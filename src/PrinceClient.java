@@ -0,0 +1,563 @@
+// Copyright (C) 2026 YesLogic Pty. Ltd.
+// All rights reserved.
+
+package com.princexml;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * PrinceClient sends conversions to one or more PrinceServer instances.
+ * Each conversion goes to the server with the fewest outstanding requests
+ * from this client, so that slow servers or expensive documents do not
+ * hold up the other servers. Connections are kept open and reused; an idle
+ * connection is checked before it is reused, and is discarded if it has
+ * been closed by the server or has been idle for too long.
+ * <p>
+ * If a server cannot be connected to, or a request to it fails, it is
+ * skipped for a few seconds and later conversions are sent to another
+ * server. Once a request has been sent, an error is reported to the caller
+ * rather than retried, as the input cannot be replayed. Errors reading the
+ * input or writing the output given by the caller, for example because a
+ * browser has disconnected, do not count against the server.
+ * <p>
+ * A PrinceClient may be used by many threads at the same time.
+ */
+public class PrinceClient
+{
+    private static final long RETRY_DELAY = 5000;
+    private static final long IDLE_TIMEOUT = 30000;
+
+    private Server[] mServers;
+    private int mNext;
+    private int mConnectTimeout;
+
+    /**
+     * Constructor for PrinceClient.
+     * @param servers The addresses of the servers (InetSocketAddresses).
+     * @throws IllegalArgumentException if no servers are given.
+     */
+    public PrinceClient(List servers)
+    {
+	if (servers.isEmpty())
+	{
+	    throw new IllegalArgumentException("no servers specified");
+	}
+
+	mServers = new Server[servers.size()];
+
+	for (int i = 0; i < mServers.length; ++i)
+	{
+	    mServers[i] = new Server((InetSocketAddress) servers.get(i));
+	}
+
+	mNext = 0;
+	mConnectTimeout = 5000;
+    }
+
+    /**
+     * Specify how long to wait when connecting to a server.
+     * @param millis The connect timeout in milliseconds.
+     */
+    public void setConnectTimeout(int millis)
+    {
+	mConnectTimeout = millis;
+    }
+
+    /**
+     * Get the number of requests currently outstanding on each server.
+     * @return The number of outstanding requests, in the order the servers
+     * were given.
+     */
+    public synchronized int[] getOutstanding()
+    {
+	int[] outstanding = new int[mServers.length];
+
+	for (int i = 0; i < mServers.length; ++i)
+	{
+	    outstanding[i] = mServers[i].mOutstanding;
+	}
+
+	return outstanding;
+    }
+
+    /**
+     * Convert an XML or HTML file to a PDF file. The file is read locally
+     * and sent to the server.
+     * @param xmlPath The filename of the input XML or HTML document.
+     * @param pdfPath The filename of the output PDF file.
+     * @return True if a PDF file was generated successfully.
+     */
+    public boolean convert(String xmlPath, String pdfPath)
+	throws IOException
+    {
+	InputStream xmlInput = new FileInputStream(xmlPath);
+
+	try
+	{
+	    OutputStream pdfOutput = new FileOutputStream(pdfPath);
+
+	    try
+	    {
+		return convert(xmlInput, pdfOutput);
+	    }
+	    finally
+	    {
+		pdfOutput.close();
+	    }
+	}
+	finally
+	{
+	    xmlInput.close();
+	}
+    }
+
+    /**
+     * Convert an XML or HTML file to a PDF file. The file is read locally
+     * and sent to the server.
+     * @param xmlPath The filename of the input XML or HTML document.
+     * @param pdfOutput The OutputStream to which the PDF output will be
+     * written.
+     * @return True if a PDF file was generated successfully.
+     */
+    public boolean convert(String xmlPath, OutputStream pdfOutput)
+	throws IOException
+    {
+	InputStream xmlInput = new FileInputStream(xmlPath);
+
+	try
+	{
+	    return convert(xmlInput, pdfOutput);
+	}
+	finally
+	{
+	    xmlInput.close();
+	}
+    }
+
+    /**
+     * Convert an XML or HTML document to a PDF file. The input is streamed
+     * to the server and the output is streamed back as it is produced.
+     * @param xmlInput The InputStream from which the XML or HTML document
+     * will be read.
+     * @param pdfOutput The OutputStream to which the PDF output will be
+     * written.
+     * @return True if a PDF file was generated successfully.
+     */
+    public boolean convert(InputStream xmlInput, OutputStream pdfOutput)
+	throws IOException
+    {
+	Server server = null;
+	Connection connection = null;
+	IOException lastError = null;
+
+	// try each server at most once to establish a connection
+	for (int attempt = 0; attempt < mServers.length; ++attempt)
+	{
+	    server = chooseServer();
+
+	    try
+	    {
+		connection = server.getConnection(mConnectTimeout);
+		break;
+	    }
+	    catch (IOException e)
+	    {
+		lastError = e;
+		endRequest(server, true);
+	    }
+	}
+
+	if (connection == null)
+	{
+	    throw lastError;
+	}
+
+	CallerInputStream callerInput = new CallerInputStream(xmlInput);
+	CallerOutputStream callerOutput = new CallerOutputStream(pdfOutput);
+	boolean success = false;
+	boolean reusable = false;
+
+	try
+	{
+	    connection.mOutput.writeInt(PrinceServer.MAGIC);
+
+	    ChunkedOutputStream chunkedOutput =
+		new ChunkedOutputStream(connection.mOutput);
+	    Util.copyInputToOutput(callerInput, chunkedOutput);
+	    chunkedOutput.close();
+
+	    ChunkedInputStream chunkedInput =
+		new ChunkedInputStream(connection.mInput);
+	    Util.copyInputToOutput(chunkedInput, callerOutput);
+
+	    success = (connection.mInput.readUnsignedByte() ==
+		       PrinceServer.STATUS_SUCCESS);
+	    reusable = true;
+	}
+	finally
+	{
+	    if (reusable)
+	    {
+		server.releaseConnection(connection);
+	    }
+	    else
+	    {
+		connection.close();
+	    }
+
+	    // a request that failed part way marks the server as down, unless
+	    // it was the caller's own input or output that failed
+	    endRequest(server, !reusable && !callerInput.mFailed &&
+		       !callerOutput.mFailed);
+	}
+
+	return success;
+    }
+
+    /**
+     * Close the idle connections to all servers.
+     */
+    public void close()
+    {
+	for (int i = 0; i < mServers.length; ++i)
+	{
+	    mServers[i].closeIdle();
+	}
+    }
+
+    /**
+     * Choose the available server with the fewest outstanding requests and
+     * count a new request against it. Ties are broken in rotation so that
+     * an idle cluster is used evenly.
+     */
+    private synchronized Server chooseServer()
+    {
+	long now = System.currentTimeMillis();
+	Server best = null;
+
+	for (int i = 0; i < mServers.length; ++i)
+	{
+	    Server server = mServers[(mNext + i) % mServers.length];
+
+	    if (best == null || server.isBetterThan(best, now))
+	    {
+		best = server;
+	    }
+	}
+
+	mNext = (mNext + 1) % mServers.length;
+	++best.mOutstanding;
+
+	return best;
+    }
+
+    /**
+     * Count a request against a server as finished.
+     * @param failed True if the server could not be connected to or the
+     * request failed.
+     */
+    private synchronized void endRequest(Server server, boolean failed)
+    {
+	--server.mOutstanding;
+
+	if (failed)
+	{
+	    server.mRetryTime = System.currentTimeMillis() + RETRY_DELAY;
+	}
+	else
+	{
+	    server.mRetryTime = 0;
+	}
+    }
+
+    /**
+     * A server and its idle connections.
+     */
+    private static class Server
+    {
+	private InetSocketAddress mAddress;
+	private List mIdle;
+	private int mOutstanding;
+	private long mRetryTime;
+
+	Server(InetSocketAddress address)
+	{
+	    mAddress = address;
+	    mIdle = new ArrayList();
+	    mOutstanding = 0;
+	    mRetryTime = 0;
+	}
+
+	/**
+	 * Compare two servers. A server that is not waiting to be retried
+	 * is better than one that is, otherwise the server with fewer
+	 * outstanding requests is better.
+	 */
+	boolean isBetterThan(Server other, long now)
+	{
+	    boolean available = (mRetryTime <= now);
+	    boolean otherAvailable = (other.mRetryTime <= now);
+
+	    if (available != otherAvailable)
+	    {
+		return available;
+	    }
+
+	    return mOutstanding < other.mOutstanding;
+	}
+
+	Connection getConnection(int connectTimeout)
+	    throws IOException
+	{
+	    while (true)
+	    {
+		Connection connection;
+
+		synchronized (mIdle)
+		{
+		    if (mIdle.isEmpty())
+		    {
+			break;
+		    }
+
+		    connection = (Connection) mIdle.remove(mIdle.size() - 1);
+		}
+
+		if (connection.isUsable())
+		{
+		    return connection;
+		}
+
+		connection.close();
+	    }
+
+	    Socket socket = new Socket();
+
+	    try
+	    {
+		socket.connect(mAddress, connectTimeout);
+		socket.setTcpNoDelay(true);
+
+		return new Connection(socket);
+	    }
+	    catch (IOException e)
+	    {
+		socket.close();
+		throw e;
+	    }
+	}
+
+	void releaseConnection(Connection connection)
+	{
+	    connection.mIdleSince = System.currentTimeMillis();
+
+	    synchronized (mIdle)
+	    {
+		mIdle.add(connection);
+	    }
+	}
+
+	void closeIdle()
+	{
+	    synchronized (mIdle)
+	    {
+		for (int i = 0; i < mIdle.size(); ++i)
+		{
+		    ((Connection) mIdle.get(i)).close();
+		}
+
+		mIdle.clear();
+	    }
+	}
+    }
+
+    /**
+     * A connection to a server.
+     */
+    private static class Connection
+    {
+	private Socket mSocket;
+	private DataInputStream mInput;
+	private DataOutputStream mOutput;
+	private long mIdleSince;
+
+	Connection(Socket socket)
+	    throws IOException
+	{
+	    mSocket = socket;
+	    mInput = new DataInputStream(
+		new BufferedInputStream(socket.getInputStream()));
+	    mOutput = new DataOutputStream(
+		new BufferedOutputStream(socket.getOutputStream()));
+	    mIdleSince = 0;
+	}
+
+	/**
+	 * Check that an idle connection can be reused. The server never
+	 * sends anything between requests, so if a read does not time out
+	 * the server has closed the connection, for example because it was
+	 * restarted.
+	 * @return True if the connection is still open.
+	 */
+	boolean isUsable()
+	{
+	    if (System.currentTimeMillis() - mIdleSince > IDLE_TIMEOUT)
+	    {
+		return false;
+	    }
+
+	    try
+	    {
+		mSocket.setSoTimeout(1);
+
+		try
+		{
+		    mInput.mark(1);
+		    mInput.read();
+		    return false;
+		}
+		catch (SocketTimeoutException e)
+		{
+		    // nothing to read, so the connection is still open
+		    mInput.reset();
+		    return true;
+		}
+		finally
+		{
+		    mSocket.setSoTimeout(0);
+		}
+	    }
+	    catch (IOException e)
+	    {
+		return false;
+	    }
+	}
+
+	void close()
+	{
+	    try
+	    {
+		mSocket.close();
+	    }
+	    catch (IOException e)
+	    {
+		// ignore errors closing the connection
+	    }
+	}
+    }
+
+    /**
+     * The caller's input, which records whether reading it failed.
+     */
+    private static class CallerInputStream extends FilterInputStream
+    {
+	private boolean mFailed;
+
+	CallerInputStream(InputStream input)
+	{
+	    super(input);
+	    mFailed = false;
+	}
+
+	public int read()
+	    throws IOException
+	{
+	    try
+	    {
+		return super.read();
+	    }
+	    catch (IOException e)
+	    {
+		mFailed = true;
+		throw e;
+	    }
+	}
+
+	public int read(byte[] b, int off, int len)
+	    throws IOException
+	{
+	    try
+	    {
+		return super.read(b, off, len);
+	    }
+	    catch (IOException e)
+	    {
+		mFailed = true;
+		throw e;
+	    }
+	}
+    }
+
+    /**
+     * The caller's output, which records whether writing it failed.
+     */
+    private static class CallerOutputStream extends FilterOutputStream
+    {
+	private boolean mFailed;
+
+	CallerOutputStream(OutputStream output)
+	{
+	    super(output);
+	    mFailed = false;
+	}
+
+	public void write(int b)
+	    throws IOException
+	{
+	    try
+	    {
+		out.write(b);
+	    }
+	    catch (IOException e)
+	    {
+		mFailed = true;
+		throw e;
+	    }
+	}
+
+	public void write(byte[] b, int off, int len)
+	    throws IOException
+	{
+	    try
+	    {
+		out.write(b, off, len);
+	    }
+	    catch (IOException e)
+	    {
+		mFailed = true;
+		throw e;
+	    }
+	}
+
+	public void flush()
+	    throws IOException
+	{
+	    try
+	    {
+		out.flush();
+	    }
+	    catch (IOException e)
+	    {
+		mFailed = true;
+		throw e;
+	    }
+	}
+    }
+}
@@ -0,0 +1,852 @@
+// Copyright (C) 2026 YesLogic Pty. Ltd.
+// All rights reserved.
+
+package com.princexml;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * PrinceLoadTest replays a directory of documents through the Prince class
+ * and reports throughput, latency percentiles, error rates and CPU use. It
+ * can be run against a real Prince executable or against a stand-in shell
+ * script that accepts the same command line but does no real work, which
+ * is useful for measuring the overhead of the library itself.
+ * <p>
+ * With the --compare-pinning option the same workload is run with Prince
+ * processes scheduled freely and with each one pinned to its own cores by
+ * a CorePlacement, and the throughput of the two is compared. A warm-up
+ * run comes first and the runs are made in the order unpinned, pinned,
+ * pinned, unpinned, so that neither mode gains from a warm page cache.
+ * <p>
+ * Run it with no arguments for a list of options.
+ */
+public class PrinceLoadTest
+{
+    private static final String[] MODES = { "file", "stdin", "multi" };
+
+    private static final int MODE_FILE = 0;
+    private static final int MODE_STDIN = 1;
+    private static final int MODE_MULTI = 2;
+
+    private String mExePath;
+    private List mStyleSheets;
+    private File[] mCorpus;
+    private File mOutputDir;
+    private int mConcurrency;
+    private double mRate;
+    private int mJobs;
+    private int mMultiCount;
+    private int[] mMix;
+    private CorePlacement mCorePlacement;
+
+    private long[] mLatencies;
+    private int[] mModes;
+    private boolean[] mErrors;
+    private AtomicInteger mNextJob;
+
+    /**
+     * Constructor for PrinceLoadTest.
+     * @param exePath The path of the Prince executable or stand-in.
+     * @param corpus The documents to convert. Jobs cycle through these in
+     * order.
+     * @param outputDir The directory in which output PDF files are
+     * written. Each PDF file is deleted once its job has finished.
+     */
+    public PrinceLoadTest(String exePath, File[] corpus, File outputDir)
+    {
+	mExePath = exePath;
+	mStyleSheets = new ArrayList();
+	mCorpus = corpus;
+	mOutputDir = outputDir;
+	mConcurrency = 4;
+	mRate = 0;
+	mJobs = 100;
+	mMultiCount = 3;
+	mMix = new int[] { 1, 0, 0 };
+	mCorePlacement = null;
+    }
+
+    /**
+     * Add a CSS style sheet that will be applied to each document.
+     * @param cssPath The filename of the CSS style sheet.
+     */
+    public void addStyleSheet(String cssPath)
+    {
+	mStyleSheets.add(cssPath);
+    }
+
+    /**
+     * Specify the number of conversions that may run at the same time.
+     * @param concurrency The number of concurrent conversions.
+     */
+    public void setConcurrency(int concurrency)
+    {
+	mConcurrency = concurrency;
+    }
+
+    /**
+     * Specify an open-loop arrival rate. Jobs are started at this rate
+     * regardless of how many are still running, up to the concurrency limit,
+     * and latency is measured from the time each job was due to start, so
+     * time spent waiting for a free slot is included. If the rate is 0 the
+     * test runs closed-loop, each slot starting a new job as soon as its
+     * previous job has finished.
+     * @param jobsPerSecond The arrival rate, or 0 for a closed-loop test.
+     */
+    public void setRate(double jobsPerSecond)
+    {
+	mRate = jobsPerSecond;
+    }
+
+    /**
+     * Specify the total number of jobs to run.
+     * @param jobs The number of jobs.
+     */
+    public void setJobs(int jobs)
+    {
+	mJobs = jobs;
+    }
+
+    /**
+     * Specify the proportion of jobs that use each conversion mode. Jobs are
+     * assigned modes in a fixed interleaved order, so the mix is the same
+     * from one run to the next.
+     * @param file The weight of jobs converting a file to a file.
+     * @param stdin The weight of jobs converting an InputStream to an
+     * OutputStream.
+     * @param multi The weight of jobs converting several files to one file.
+     * @throws IllegalArgumentException if all of the weights are 0.
+     */
+    public void setMix(int file, int stdin, int multi)
+    {
+	if (file + stdin + multi <= 0)
+	{
+	    throw new IllegalArgumentException(
+		    "invalid mix: at least one weight must be positive");
+	}
+
+	mMix = new int[] { file, stdin, multi };
+    }
+
+    /**
+     * Specify the number of documents combined by each multi-document job.
+     * @param count The number of documents.
+     */
+    public void setMultiCount(int count)
+    {
+	mMultiCount = count;
+    }
+
+    /**
+     * Specify a CorePlacement used to pin the Prince processes to cores.
+     * @param corePlacement The CorePlacement, or null to not pin processes.
+     */
+    public void setCorePlacement(CorePlacement corePlacement)
+    {
+	mCorePlacement = corePlacement;
+    }
+
+    /**
+     * Run the test.
+     * @return A report of the results.
+     */
+    public Report run()
+	throws InterruptedException
+    {
+	final Prince prince = createPrince();
+
+	mLatencies = new long[mJobs];
+	mModes = new int[mJobs];
+	mErrors = new boolean[mJobs];
+	mNextJob = new AtomicInteger(0);
+
+	for (int i = 0; i < mJobs; ++i)
+	{
+	    mModes[i] = modeForJob(i);
+	}
+
+	long[] cpuBefore = readCpuTicks();
+	long startNanos = System.nanoTime();
+
+	ExecutorService executor = Executors.newFixedThreadPool(mConcurrency);
+
+	if (mRate > 0)
+	{
+	    // open loop: submit each job at its scheduled arrival time
+	    long intervalNanos = (long) (1e9 / mRate);
+
+	    for (int i = 0; i < mJobs; ++i)
+	    {
+		final int job = i;
+		final long due = startNanos + i * intervalNanos;
+		long wait = due - System.nanoTime();
+
+		if (wait > 0)
+		{
+		    TimeUnit.NANOSECONDS.sleep(wait);
+		}
+
+		executor.execute(new Runnable() {
+		    public void run()
+		    {
+			runJob(prince, job, due);
+		    }
+		});
+	    }
+	}
+	else
+	{
+	    // closed loop: each slot starts the next job when it is free
+	    for (int i = 0; i < mConcurrency; ++i)
+	    {
+		executor.execute(new Runnable() {
+		    public void run()
+		    {
+			int job;
+
+			while ((job = mNextJob.getAndIncrement()) < mJobs)
+			{
+			    runJob(prince, job, System.nanoTime());
+			}
+		    }
+		});
+	    }
+	}
+
+	executor.shutdown();
+
+	while (!executor.awaitTermination(1, TimeUnit.SECONDS))
+	{
+	    // wait for the remaining jobs
+	}
+
+	long elapsedNanos = System.nanoTime() - startNanos;
+	long[] cpuAfter = readCpuTicks();
+
+	return new Report(this, elapsedNanos, cpuBefore, cpuAfter);
+    }
+
+    /**
+     * Create the Prince instance shared by all of the jobs. Subclasses may
+     * override this to apply additional settings.
+     * @return The Prince instance.
+     */
+    protected Prince createPrince()
+    {
+	Prince prince = new Prince(mExePath);
+
+	for (int i = 0; i < mStyleSheets.size(); ++i)
+	{
+	    prince.addStyleSheet((String) mStyleSheets.get(i));
+	}
+
+	prince.setCorePlacement(mCorePlacement);
+
+	return prince;
+    }
+
+    private int modeForJob(int job)
+    {
+	int total = mMix[0] + mMix[1] + mMix[2];
+	int slot = job % total;
+
+	for (int mode = 0; mode < mMix.length; ++mode)
+	{
+	    if (slot < mMix[mode])
+	    {
+		return mode;
+	    }
+
+	    slot -= mMix[mode];
+	}
+
+	return MODE_FILE;
+    }
+
+    private void runJob(Prince prince, int job, long startNanos)
+    {
+	File pdf = new File(mOutputDir, "job-" + job + ".pdf");
+	boolean success = false;
+
+	try
+	{
+	    File doc = mCorpus[job % mCorpus.length];
+
+	    switch (mModes[job])
+	    {
+	    case MODE_STDIN:
+		InputStream input = new FileInputStream(doc);
+
+		try
+		{
+		    success = prince.convert(input, new DiscardOutputStream());
+		}
+		finally
+		{
+		    input.close();
+		}
+		break;
+
+	    case MODE_MULTI:
+		List docs = new ArrayList();
+
+		for (int i = 0; i < mMultiCount; ++i)
+		{
+		    docs.add(mCorpus[(job + i) % mCorpus.length].getPath());
+		}
+
+		success = prince.convertMultiple(docs, pdf.getPath());
+		break;
+
+	    default:
+		success = prince.convert(doc.getPath(), pdf.getPath());
+		break;
+	    }
+	}
+	catch (IOException e)
+	{
+	    success = false;
+	}
+	catch (RuntimeException e)
+	{
+	    // count it as a failed job rather than losing the measurement
+	    success = false;
+	}
+	finally
+	{
+	    pdf.delete();
+	}
+
+	mLatencies[job] = System.nanoTime() - startNanos;
+	mErrors[job] = !success;
+    }
+
+    /**
+     * Read the CPU time used by this process and by its finished child
+     * processes from /proc/self/stat. The values are in clock ticks.
+     * @return { user, system, children user, children system }, or null if
+     * /proc is not available.
+     */
+    static long[] readCpuTicks()
+    {
+	try
+	{
+	    BufferedReader reader =
+		new BufferedReader(new FileReader("/proc/self/stat"));
+	    String line;
+
+	    try
+	    {
+		line = reader.readLine();
+	    }
+	    finally
+	    {
+		reader.close();
+	    }
+
+	    // skip past the command name, which may contain spaces
+	    String[] fields = line.substring(line.lastIndexOf(')') + 2).split(" ");
+
+	    // utime, stime, cutime and cstime are fields 14 to 17 of the line
+	    return new long[] {
+		Long.parseLong(fields[11]),
+		Long.parseLong(fields[12]),
+		Long.parseLong(fields[13]),
+		Long.parseLong(fields[14])
+	    };
+	}
+	catch (IOException e)
+	{
+	    return null;
+	}
+	catch (RuntimeException e)
+	{
+	    return null;
+	}
+    }
+
+    /**
+     * Write a shell script that can stand in for the Prince executable. It
+     * accepts the same command line, reads its input, sleeps for the given
+     * time, writes a minimal PDF file and reports success.
+     * @param script The file to write the script to.
+     * @param delayMillis The time the script should take for each job.
+     */
+    public static void writeStandIn(File script, long delayMillis)
+	throws IOException
+    {
+	String delay = (delayMillis / 1000) + "." +
+	    (1000 + delayMillis % 1000 + "").substring(1);
+
+	Writer writer = new FileWriter(script);
+
+	try
+	{
+	    writer.write(
+		"#!/bin/sh\n" +
+		"# Stand-in for the Prince executable written by PrinceLoadTest.\n" +
+		"out=\n" +
+		"first=\n" +
+		"second=\n" +
+		"count=0\n" +
+		"prev=\n" +
+		"for arg in \"$@\"; do\n" +
+		"  if [ \"$prev\" = \"-o\" ]; then out=\"$arg\"; prev=; continue; fi\n" +
+		"  case \"$arg\" in\n" +
+		"    -o) prev=-o ;;\n" +
+		"    --output=*) out=\"${arg#--output=}\" ;;\n" +
+		"    --*) ;;\n" +
+		"    *) count=$((count+1))\n" +
+		"       [ $count -eq 1 ] && first=\"$arg\"\n" +
+		"       [ $count -eq 2 ] && second=\"$arg\" ;;\n" +
+		"  esac\n" +
+		"done\n" +
+		"if [ -z \"$out\" ] && [ $count -eq 2 ]; then out=\"$second\"; count=1; fi\n" +
+		"[ -z \"$out\" ] && [ \"$first\" = \"-\" ] && out=-\n" +
+		"[ -z \"$out\" ] && out=\"${first%.*}.pdf\"\n" +
+		"n=0\n" +
+		"prev=\n" +
+		"for arg in \"$@\"; do\n" +
+		"  if [ \"$prev\" = \"-o\" ]; then prev=; continue; fi\n" +
+		"  case \"$arg\" in\n" +
+		"    -o) prev=-o ;;\n" +
+		"    --*) ;;\n" +
+		"    -) cat > /dev/null ;;\n" +
+		"    *) n=$((n+1))\n" +
+		"       [ $n -gt $count ] && break\n" +
+		"       if ! cat \"$arg\" > /dev/null; then\n" +
+		"         echo \"msg|err|$arg|cannot read input\" >&2\n" +
+		"         echo 'fin|failure' >&2\n" +
+		"         exit 1\n" +
+		"       fi ;;\n" +
+		"  esac\n" +
+		"done\n" +
+		"sleep " + delay + "\n" +
+		"if [ \"$out\" = \"-\" ]; then\n" +
+		"  printf '%%PDF-1.4\\n%%%%EOF\\n'\n" +
+		"else\n" +
+		"  printf '%%PDF-1.4\\n%%%%EOF\\n' > \"$out\"\n" +
+		"fi\n" +
+		"echo 'fin|success' >&2\n");
+	}
+	finally
+	{
+	    writer.close();
+	}
+
+	Util.changeMode(script, "755");
+    }
+
+    private static void usage()
+    {
+	System.err.println(
+	    "usage: java com.princexml.PrinceLoadTest [options] CORPUS-DIR\n" +
+	    "\n" +
+	    "  --prince=PATH       Prince executable (default: prince)\n" +
+	    "  --stand-in[=MS]     use a stand-in script taking MS ms per job\n" +
+	    "  --style=PATH        CSS style sheet to apply (may be repeated)\n" +
+	    "  --concurrency=N     concurrent conversions (default: 4)\n" +
+	    "  --rate=R            open-loop arrivals per second (default:\n" +
+	    "                      closed loop)\n" +
+	    "  --jobs=N            number of jobs to run (default: 100)\n" +
+	    "  --mix=F:S:M         weights of file, stdin and multi-document\n" +
+	    "                      jobs (default: 1:0:0)\n" +
+	    "  --multi-count=N     documents per multi-document job (default: 3)\n" +
+	    "  --output=DIR        directory for output PDF files (default: a\n" +
+	    "                      temporary directory)\n" +
+	    "  --pin=N             pin each Prince process to N cores\n" +
+	    "  --compare-pinning   compare throughput unpinned and pinned\n" +
+	    "                      (default --pin=1) after a warm-up run");
+    }
+
+    /**
+     * Run a load test from the command line.
+     * @param args The command line arguments.
+     */
+    public static void main(String[] args)
+	throws Exception
+    {
+	String exePath = "prince";
+	long standInDelay = -1;
+	List styleSheets = new ArrayList();
+	int concurrency = 4;
+	double rate = 0;
+	int jobs = 100;
+	int[] mix = { 1, 0, 0 };
+	int multiCount = 3;
+	File outputDir = null;
+	File corpusDir = null;
+	int pinCores = 0;
+	boolean comparePinning = false;
+
+	for (int i = 0; i < args.length; ++i)
+	{
+	    String arg = args[i];
+	    String value = (arg.indexOf('=') != -1
+			    ? arg.substring(arg.indexOf('=') + 1) : null);
+
+	    if (arg.startsWith("--prince="))
+	    {
+		exePath = value;
+	    }
+	    else if (arg.equals("--stand-in"))
+	    {
+		standInDelay = 0;
+	    }
+	    else if (arg.startsWith("--stand-in="))
+	    {
+		standInDelay = Long.parseLong(value);
+	    }
+	    else if (arg.startsWith("--style="))
+	    {
+		styleSheets.add(value);
+	    }
+	    else if (arg.startsWith("--concurrency="))
+	    {
+		concurrency = Integer.parseInt(value);
+	    }
+	    else if (arg.startsWith("--rate="))
+	    {
+		rate = Double.parseDouble(value);
+	    }
+	    else if (arg.startsWith("--jobs="))
+	    {
+		jobs = Integer.parseInt(value);
+	    }
+	    else if (arg.startsWith("--mix="))
+	    {
+		String[] weights = value.split(":");
+
+		if (weights.length != 3)
+		{
+		    usage();
+		    System.exit(2);
+		}
+
+		for (int j = 0; j < 3; ++j)
+		{
+		    mix[j] = Integer.parseInt(weights[j]);
+		}
+	    }
+	    else if (arg.startsWith("--multi-count="))
+	    {
+		multiCount = Integer.parseInt(value);
+	    }
+	    else if (arg.startsWith("--output="))
+	    {
+		outputDir = new File(value);
+	    }
+	    else if (arg.startsWith("--pin="))
+	    {
+		pinCores = Integer.parseInt(value);
+	    }
+	    else if (arg.equals("--compare-pinning"))
+	    {
+		comparePinning = true;
+	    }
+	    else if (!arg.startsWith("--") && corpusDir == null)
+	    {
+		corpusDir = new File(arg);
+	    }
+	    else
+	    {
+		usage();
+		System.exit(2);
+	    }
+	}
+
+	if (corpusDir == null)
+	{
+	    usage();
+	    System.exit(2);
+	}
+
+	File[] corpus = corpusDir.listFiles();
+
+	if (corpus == null || corpus.length == 0)
+	{
+	    System.err.println("no documents found in " + corpusDir);
+	    System.exit(1);
+	}
+
+	Arrays.sort(corpus);
+
+	File tempDir = null;
+
+	if (outputDir == null)
+	{
+	    tempDir = File.createTempFile("prince-load", "");
+	    tempDir.delete();
+	    tempDir.mkdir();
+	    outputDir = tempDir;
+	}
+
+	if (standInDelay >= 0)
+	{
+	    File script = new File(outputDir, "prince-stand-in.sh");
+	    writeStandIn(script, standInDelay);
+	    exePath = script.getPath();
+	}
+
+	PrinceLoadTest test = new PrinceLoadTest(exePath, corpus, outputDir);
+
+	for (int i = 0; i < styleSheets.size(); ++i)
+	{
+	    test.addStyleSheet((String) styleSheets.get(i));
+	}
+
+	test.setConcurrency(concurrency);
+	test.setRate(rate);
+	test.setJobs(jobs);
+	test.setMix(mix[0], mix[1], mix[2]);
+	test.setMultiCount(multiCount);
+
+	if (comparePinning)
+	{
+	    CorePlacement placement =
+		new CorePlacement(pinCores > 0 ? pinCores : 1);
+
+	    CorePlacement[] order = { null, placement, placement, null };
+	    double unpinnedThroughput = 0;
+	    double pinnedThroughput = 0;
+
+	    // discard a warm-up run, then alternate the modes so that both
+	    // run as often first and last
+	    test.run();
+
+	    for (int i = 0; i < order.length; ++i)
+	    {
+		test.setCorePlacement(order[i]);
+
+		Report report = test.run();
+
+		if (i > 0)
+		{
+		    System.out.println();
+		}
+
+		if (order[i] == null)
+		{
+		    unpinnedThroughput += report.getThroughput();
+		    System.out.println("unpinned:");
+		}
+		else
+		{
+		    pinnedThroughput += report.getThroughput();
+		    System.out.println("pinned (" + placement.getSlotCount() +
+				       " slots: " + placement.getCoreSets() +
+				       "):");
+		}
+
+		System.out.print(report);
+	    }
+
+	    double change = pinnedThroughput / unpinnedThroughput - 1;
+	    System.out.println();
+	    System.out.println("pinned throughput change: " +
+			       Report.format(change * 100) + "%");
+	}
+	else
+	{
+	    if (pinCores > 0)
+	    {
+		test.setCorePlacement(new CorePlacement(pinCores));
+	    }
+
+	    Report report = test.run();
+	    System.out.print(report);
+	}
+
+	if (tempDir != null)
+	{
+	    new File(tempDir, "prince-stand-in.sh").delete();
+	    tempDir.delete();
+	}
+    }
+
+    /**
+     * The results of a load test run.
+     */
+    public static class Report
+    {
+	// Linux reports /proc times in units of USER_HZ, which is 100
+	private static final double TICKS_PER_SECOND = 100.0;
+
+	private int mJobs;
+	private int mConcurrency;
+	private long mElapsedNanos;
+	private long[] mSortedLatencies;
+	private int[] mModeJobs;
+	private int[] mModeErrors;
+	private int mErrors;
+	private double mProcessCpu;
+	private double mChildCpu;
+
+	Report(PrinceLoadTest test, long elapsedNanos,
+	       long[] cpuBefore, long[] cpuAfter)
+	{
+	    mJobs = test.mJobs;
+	    mConcurrency = test.mConcurrency;
+	    mElapsedNanos = elapsedNanos;
+	    mSortedLatencies = test.mLatencies.clone();
+	    Arrays.sort(mSortedLatencies);
+	    mModeJobs = new int[MODES.length];
+	    mModeErrors = new int[MODES.length];
+	    mErrors = 0;
+
+	    for (int i = 0; i < mJobs; ++i)
+	    {
+		++mModeJobs[test.mModes[i]];
+
+		if (test.mErrors[i])
+		{
+		    ++mModeErrors[test.mModes[i]];
+		    ++mErrors;
+		}
+	    }
+
+	    if (cpuBefore != null && cpuAfter != null)
+	    {
+		mProcessCpu = (cpuAfter[0] + cpuAfter[1] -
+			       cpuBefore[0] - cpuBefore[1]) / TICKS_PER_SECOND;
+		mChildCpu = (cpuAfter[2] + cpuAfter[3] -
+			     cpuBefore[2] - cpuBefore[3]) / TICKS_PER_SECOND;
+	    }
+	    else
+	    {
+		mProcessCpu = -1;
+		mChildCpu = -1;
+	    }
+	}
+
+	/**
+	 * Get the throughput of the run.
+	 * @return The number of jobs finished per second.
+	 */
+	public double getThroughput()
+	{
+	    return mJobs / (mElapsedNanos / 1e9);
+	}
+
+	/**
+	 * Get a latency percentile.
+	 * @param percentile The percentile, from 0 to 100.
+	 * @return The latency in milliseconds.
+	 */
+	public double getLatency(double percentile)
+	{
+	    if (mSortedLatencies.length == 0)
+	    {
+		return 0;
+	    }
+
+	    int index = (int) Math.ceil(percentile / 100.0 *
+					mSortedLatencies.length) - 1;
+	    index = Math.max(0, Math.min(index, mSortedLatencies.length - 1));
+
+	    return mSortedLatencies[index] / 1e6;
+	}
+
+	/**
+	 * Get the proportion of jobs that failed.
+	 * @return The error rate, from 0 to 1.
+	 */
+	public double getErrorRate()
+	{
+	    return (mJobs > 0 ? (double) mErrors / mJobs : 0);
+	}
+
+	/**
+	 * Get the CPU time used by the Prince processes.
+	 * @return The CPU time in seconds, or -1 if it is not available.
+	 */
+	public double getChildCpuSeconds()
+	{
+	    return mChildCpu;
+	}
+
+	/**
+	 * Get the CPU time used by the Java process.
+	 * @return The CPU time in seconds, or -1 if it is not available.
+	 */
+	public double getProcessCpuSeconds()
+	{
+	    return mProcessCpu;
+	}
+
+	public String toString()
+	{
+	    double elapsed = mElapsedNanos / 1e9;
+	    StringBuffer buf = new StringBuffer();
+
+	    buf.append("jobs:        " + mJobs + " (concurrency " +
+		       mConcurrency + ")\n");
+	    buf.append("elapsed:     " + format(elapsed) + " s\n");
+	    buf.append("throughput:  " + format(getThroughput()) +
+		       " jobs/s\n");
+	    buf.append("latency ms:  p50 " + format(getLatency(50)) +
+		       "  p90 " + format(getLatency(90)) +
+		       "  p99 " + format(getLatency(99)) +
+		       "  max " + format(getLatency(100)) + "\n");
+	    buf.append("errors:      " + mErrors + " (" +
+		       format(getErrorRate() * 100) + "%)\n");
+
+	    for (int mode = 0; mode < MODES.length; ++mode)
+	    {
+		if (mModeJobs[mode] > 0)
+		{
+		    buf.append("  " + MODES[mode] + ": " + mModeErrors[mode] +
+			       " of " + mModeJobs[mode] + "\n");
+		}
+	    }
+
+	    if (mChildCpu >= 0)
+	    {
+		int cores = Runtime.getRuntime().availableProcessors();
+		double used = (mProcessCpu + mChildCpu) / (elapsed * cores);
+
+		buf.append("cpu:         prince " + format(mChildCpu) +
+			   " s, java " + format(mProcessCpu) + " s (" +
+			   format(used * 100) + "% of " + cores +
+			   " cores)\n");
+	    }
+
+	    return buf.toString();
+	}
+
+	static String format(double value)
+	{
+	    return String.valueOf(Math.round(value * 100) / 100.0);
+	}
+    }
+
+    /**
+     * An OutputStream that discards everything written to it.
+     */
+    private static class DiscardOutputStream extends OutputStream
+    {
+	public void write(int b)
+	{
+	}
+
+	public void write(byte[] b, int off, int len)
+	{
+	}
+    }
+}
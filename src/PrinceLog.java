@@ -0,0 +1,117 @@
+// Copyright (C) 2026 YesLogic Pty. Ltd.
+// All rights reserved.
+
+package com.princexml;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * PrinceLog holds the messages received from Prince during a single
+ * conversion. It is a bounded ring buffer: once it is full, the oldest
+ * message is discarded to make room for each new one.
+ */
+public class PrinceLog
+{
+    private String[] mLines;
+    private int mStart;
+    private int mCount;
+    private long mDropped;
+
+    /**
+     * Constructor for PrinceLog.
+     * @param capacity The maximum number of messages to keep.
+     * @throws IllegalArgumentException if capacity is less than 1.
+     */
+    public PrinceLog(int capacity)
+    {
+	if (capacity < 1)
+	{
+	    throw new IllegalArgumentException(
+		    "invalid value for capacity: "+capacity+
+		    " (must be at least 1)");
+	}
+
+	mLines = new String[capacity];
+	mStart = 0;
+	mCount = 0;
+	mDropped = 0;
+    }
+
+    /**
+     * Add a message to the log, discarding the oldest message if the log is
+     * already full.
+     * @param line The message, in the form "type|location|text".
+     */
+    public void add(String line)
+    {
+	if (mCount < mLines.length)
+	{
+	    mLines[(mStart + mCount) % mLines.length] = line;
+	    ++mCount;
+	}
+	else
+	{
+	    mLines[mStart] = line;
+	    mStart = (mStart + 1) % mLines.length;
+	    ++mDropped;
+	}
+    }
+
+    /**
+     * Get the number of messages currently held in the log.
+     * @return The number of messages.
+     */
+    public int size()
+    {
+	return mCount;
+    }
+
+    /**
+     * Get the maximum number of messages that the log can hold.
+     * @return The capacity of the log.
+     */
+    public int getCapacity()
+    {
+	return mLines.length;
+    }
+
+    /**
+     * Get the number of messages that were discarded because the log was
+     * full.
+     * @return The number of discarded messages.
+     */
+    public long getDroppedCount()
+    {
+	return mDropped;
+    }
+
+    /**
+     * Get the messages held in the log, oldest first.
+     * @return A list of messages (Strings).
+     */
+    public List getLines()
+    {
+	List lines = new ArrayList(mCount);
+
+	for (int i = 0; i < mCount; ++i)
+	{
+	    lines.add(mLines[(mStart + i) % mLines.length]);
+	}
+
+	return lines;
+    }
+
+    public String toString()
+    {
+	StringBuffer buf = new StringBuffer();
+
+	for (int i = 0; i < mCount; ++i)
+	{
+	    buf.append(mLines[(mStart + i) % mLines.length]);
+	    buf.append('\n');
+	}
+
+	return buf.toString();
+    }
+}
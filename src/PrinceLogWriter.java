@@ -0,0 +1,272 @@
+// Copyright (C) 2026 YesLogic Pty. Ltd.
+// All rights reserved.
+
+package com.princexml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PrinceLogWriter writes the messages captured from each conversion to a
+ * rolling log file. Results are queued by the converting thread and written
+ * in batches by a background thread, so no disk write takes place while a
+ * document is being converted. If the queue is full the result is dropped
+ * rather than blocking the conversion.
+ * <p>
+ * When the log file grows beyond the maximum size it is renamed with a ".1"
+ * suffix, existing backups are shifted along, and a new log file is
+ * started.
+ */
+public class PrinceLogWriter
+{
+    private static final Object CLOSE = new Object();
+    private static final int MAX_BATCH = 256;
+
+    private File mLogFile;
+    private long mMaxFileSize;
+    private int mMaxBackups;
+    private BlockingQueue mQueue;
+    private Thread mThread;
+    private OutputStream mOutput;
+    private long mFileSize;
+    private AtomicLong mDropped;
+    private volatile boolean mClosed;
+
+    /**
+     * Constructor for PrinceLogWriter. The background thread is started
+     * immediately.
+     * @param logFile The filename of the log file.
+     * @param maxFileSize The size in bytes at which the log file is rolled
+     * over, or 0 to never roll over.
+     * @param maxBackups The number of rolled over log files to keep.
+     * @param queueCapacity The maximum number of results waiting to be
+     * written.
+     */
+    public PrinceLogWriter(String logFile, long maxFileSize, int maxBackups,
+			   int queueCapacity)
+    {
+	mLogFile = new File(logFile);
+	mMaxFileSize = maxFileSize;
+	mMaxBackups = maxBackups;
+	mQueue = new ArrayBlockingQueue(queueCapacity);
+	mOutput = null;
+	mFileSize = mLogFile.length();
+	mDropped = new AtomicLong();
+	mClosed = false;
+
+	mThread = new Thread(new Runnable() {
+	    public void run()
+	    {
+		writeLoop();
+	    }
+	}, "PrinceLogWriter");
+	mThread.setDaemon(true);
+	mThread.start();
+    }
+
+    /**
+     * Queue the captured messages of a conversion to be written to the log.
+     * This method never blocks.
+     * @param result The result of the conversion.
+     * @return True if the result was queued, false if it was dropped because
+     * the queue is full or the writer has been closed.
+     */
+    public boolean submit(PrinceResult result)
+    {
+	if (mClosed || !mQueue.offer(result))
+	{
+	    mDropped.incrementAndGet();
+	    return false;
+	}
+
+	return true;
+    }
+
+    /**
+     * Get the number of results that were dropped because the queue was
+     * full.
+     * @return The number of dropped results.
+     */
+    public long getDroppedCount()
+    {
+	return mDropped.get();
+    }
+
+    /**
+     * Write any queued results and stop the background thread.
+     */
+    public void close()
+	throws InterruptedException
+    {
+	if (!mClosed)
+	{
+	    mClosed = true;
+	    mQueue.put(CLOSE);
+	}
+
+	mThread.join();
+    }
+
+    private void writeLoop()
+    {
+	List batch = new ArrayList();
+	boolean done = false;
+
+	while (!done)
+	{
+	    try
+	    {
+		Object first = mQueue.poll(1, TimeUnit.SECONDS);
+
+		if (first == null)
+		{
+		    continue;
+		}
+
+		batch.add(first);
+		mQueue.drainTo(batch, MAX_BATCH - 1);
+	    }
+	    catch (InterruptedException e)
+	    {
+		mQueue.drainTo(batch);
+		done = true;
+	    }
+
+	    if (batch.remove(CLOSE))
+	    {
+		mQueue.drainTo(batch);
+		done = true;
+	    }
+
+	    try
+	    {
+		writeBatch(batch);
+	    }
+	    catch (IOException e)
+	    {
+		// the log is best effort, discard the batch
+		mDropped.addAndGet(batch.size());
+		closeOutput();
+	    }
+
+	    batch.clear();
+	}
+
+	closeOutput();
+    }
+
+    private void writeBatch(List batch)
+	throws IOException
+    {
+	if (batch.isEmpty())
+	{
+	    return;
+	}
+
+	ByteArrayOutputStream buf = new ByteArrayOutputStream();
+
+	for (int i = 0; i < batch.size(); ++i)
+	{
+	    PrinceResult result = (PrinceResult) batch.get(i);
+	    PrinceLog log = result.getLog();
+	    String prefix = "[" + result.getJobId() + "] ";
+
+	    StringBuffer header = new StringBuffer(prefix);
+	    header.append(result.getInput());
+	    header.append(result.isSuccess() ? ": success" : ": failure");
+
+	    if (log != null && log.getDroppedCount() > 0)
+	    {
+		header.append(" (" + log.getDroppedCount() +
+			      " earlier messages dropped)");
+	    }
+
+	    header.append('\n');
+	    buf.write(header.toString().getBytes("UTF-8"));
+
+	    if (log != null)
+	    {
+		List lines = log.getLines();
+
+		for (int j = 0; j < lines.size(); ++j)
+		{
+		    String line = prefix + lines.get(j) + "\n";
+		    buf.write(line.getBytes("UTF-8"));
+		}
+	    }
+	}
+
+	if (mMaxFileSize > 0 && mFileSize > 0 &&
+	    mFileSize + buf.size() > mMaxFileSize)
+	{
+	    rollOver();
+	}
+
+	if (mOutput == null)
+	{
+	    mOutput = new FileOutputStream(mLogFile.getPath(), true);
+	    mFileSize = mLogFile.length();
+	}
+
+	buf.writeTo(mOutput);
+	mOutput.flush();
+	mFileSize += buf.size();
+    }
+
+    /**
+     * Shift the backup log files along by one and move the current log file
+     * to the first backup.
+     */
+    private void rollOver()
+    {
+	closeOutput();
+
+	String path = mLogFile.getPath();
+
+	if (mMaxBackups < 1)
+	{
+	    mLogFile.delete();
+	}
+	else
+	{
+	    new File(path + "." + mMaxBackups).delete();
+
+	    for (int i = mMaxBackups - 1; i >= 1; --i)
+	    {
+		File backup = new File(path + "." + i);
+		backup.renameTo(new File(path + "." + (i + 1)));
+	    }
+
+	    mLogFile.renameTo(new File(path + ".1"));
+	}
+
+	mFileSize = 0;
+    }
+
+    private void closeOutput()
+    {
+	if (mOutput != null)
+	{
+	    try
+	    {
+		mOutput.close();
+	    }
+	    catch (IOException e)
+	    {
+		// ignore errors closing the log file
+	    }
+
+	    mOutput = null;
+	}
+    }
+}
@@ -0,0 +1,156 @@
+// Copyright (C) 2026 YesLogic Pty. Ltd.
+// All rights reserved.
+
+package com.princexml;
+
+/**
+ * PrinceResult describes the outcome of a single conversion. The result of
+ * the most recent conversion made by the current thread can be obtained by
+ * calling <code>Prince.getLastResult()</code>.
+ */
+public class PrinceResult
+{
+    private long mJobId;
+    private String mInput;
+    private String mConfigKey;
+    private boolean mSuccess;
+    private PrinceLog mLog;
+
+    // Resource usage
+    private long mWallTime;
+    private long mCpuTime;
+    private long mPeakMemory;
+    private long mBytesIn;
+    private long mBytesOut;
+
+    PrinceResult(long jobId, String input, String configKey,
+		 boolean success, PrinceLog log)
+    {
+	mJobId = jobId;
+	mInput = input;
+	mConfigKey = configKey;
+	mSuccess = success;
+	mLog = log;
+
+	// Resource usage
+	mWallTime = 0;
+	mCpuTime = -1;
+	mPeakMemory = -1;
+	mBytesIn = -1;
+	mBytesOut = -1;
+    }
+
+    void setResourceUsage(long wallTime, long cpuTime, long peakMemory,
+			  long bytesIn, long bytesOut)
+    {
+	mWallTime = wallTime;
+	mCpuTime = cpuTime;
+	mPeakMemory = peakMemory;
+	mBytesIn = bytesIn;
+	mBytesOut = bytesOut;
+    }
+
+    /**
+     * Get the job number of the conversion. Job numbers are unique within
+     * the Java process and are used to label the conversion in the log
+     * written by PrinceLogWriter.
+     * @return The job number.
+     */
+    public long getJobId()
+    {
+	return mJobId;
+    }
+
+    /**
+     * Get the input of the conversion.
+     * @return The input filename(s), or "-" if the input was read from an
+     * InputStream.
+     */
+    public String getInput()
+    {
+	return mInput;
+    }
+
+    /**
+     * Get the configuration of the conversion, which is the Prince command
+     * line without the executable path, input or output, or the options
+     * that usually change from one document to the next: the base URL, log
+     * file and HTTP proxy. Conversions with the same configuration are
+     * totalled together by PrinceStats.
+     * @return The configuration key.
+     */
+    public String getConfigKey()
+    {
+	return mConfigKey;
+    }
+
+    /**
+     * Check whether the conversion was successful.
+     * @return True if a PDF file was generated successfully.
+     */
+    public boolean isSuccess()
+    {
+	return mSuccess;
+    }
+
+    /**
+     * Get the messages that were received from Prince during the conversion.
+     * @return The captured messages, or null if log capture was not enabled
+     * with <code>Prince.setLogCapture()</code>.
+     */
+    public PrinceLog getLog()
+    {
+	return mLog;
+    }
+
+    /**
+     * Get the time from starting the Prince process until it finished.
+     * @return The wall time in milliseconds.
+     */
+    public long getWallTime()
+    {
+	return mWallTime;
+    }
+
+    /**
+     * Get the CPU time used by the Prince process. This is sampled from
+     * /proc while the process runs, so it may miss the last moments of the
+     * conversion.
+     * @return The user and system CPU time in milliseconds, or -1 if
+     * resource accounting was not enabled or /proc is not available.
+     */
+    public long getCpuTime()
+    {
+	return mCpuTime;
+    }
+
+    /**
+     * Get the peak resident memory of the Prince process.
+     * @return The peak memory in bytes, or -1 if resource accounting was not
+     * enabled or /proc is not available.
+     */
+    public long getPeakMemory()
+    {
+	return mPeakMemory;
+    }
+
+    /**
+     * Get the size of the input. For file input this is the size of the
+     * input files; for InputStream input it is the number of bytes sent to
+     * Prince.
+     * @return The input size in bytes, or -1 if it is not known.
+     */
+    public long getBytesIn()
+    {
+	return mBytesIn;
+    }
+
+    /**
+     * Get the size of the PDF output.
+     * @return The output size in bytes, or -1 if it is not known.
+     */
+    public long getBytesOut()
+    {
+	return mBytesOut;
+    }
+}
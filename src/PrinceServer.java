@@ -0,0 +1,354 @@
+// Copyright (C) 2026 YesLogic Pty. Ltd.
+// All rights reserved.
+
+package com.princexml;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+
+/**
+ * PrinceServer accepts conversion requests over TCP and converts them with
+ * a Prince instance. It is used together with PrinceClient to spread
+ * conversions across several machines.
+ * <p>
+ * Each connection carries a sequence of requests. A request is the magic
+ * number followed by the input document as length-prefixed chunks, and the
+ * response is the PDF output as length-prefixed chunks followed by a status
+ * byte. The input is piped to Prince as it arrives and the output is sent
+ * back as Prince produces it, so documents are never held in memory.
+ * <p>
+ * The server does not authenticate clients, and Prince may read local
+ * files that a document refers to, such as file: URLs and XIncludes. Any
+ * client that can connect can therefore have files readable by the server
+ * rendered into a PDF. By default the server only listens on the loopback
+ * interface; only listen on other interfaces on a trusted network.
+ * <p>
+ * All requests are converted with the settings of the Prince instance
+ * given to the server. Error/warning messages are not returned to the
+ * client. As with <code>Prince.convert(InputStream, OutputStream)</code>,
+ * they are not passed to the PrinceEvents interface or captured either, so
+ * use the <code>setLog()</code> method of the server's Prince instance to
+ * specify a log file that they are written to.
+ */
+public class PrinceServer
+{
+    static final int MAGIC = 0x50524e31; // "PRN1"
+    static final int STATUS_FAILURE = 0;
+    static final int STATUS_SUCCESS = 1;
+
+    private Prince mPrince;
+    private InetAddress mBindAddress;
+    private int mPort;
+    private Semaphore mJobs;
+    private ServerSocket mServerSocket;
+    private Set mConnections;
+    private Thread mAcceptThread;
+
+    /**
+     * Constructor for PrinceServer. The server listens on the loopback
+     * interface only.
+     * @param prince The Prince instance used for conversions.
+     * @param port The port to listen on, or 0 to choose a free port.
+     */
+    public PrinceServer(Prince prince, int port)
+    {
+	this(prince, null, port);
+    }
+
+    /**
+     * Constructor for PrinceServer.
+     * @param prince The Prince instance used for conversions.
+     * @param bindAddress The address to listen on, or null to listen on the
+     * loopback interface only. Use the wildcard address 0.0.0.0 to listen
+     * on all network interfaces.
+     * @param port The port to listen on, or 0 to choose a free port.
+     */
+    public PrinceServer(Prince prince, InetAddress bindAddress, int port)
+    {
+	mPrince = prince;
+	mBindAddress = bindAddress;
+	mPort = port;
+	mJobs = null;
+	mServerSocket = null;
+	mConnections = new HashSet();
+	mAcceptThread = null;
+    }
+
+    /**
+     * Limit the number of conversions that run at the same time. Further
+     * requests wait until a conversion has finished. By default there is
+     * no limit.
+     * @param maxJobs The maximum number of concurrent conversions.
+     */
+    public void setMaxJobs(int maxJobs)
+    {
+	mJobs = new Semaphore(maxJobs, true);
+    }
+
+    /**
+     * Start listening for connections.
+     */
+    public synchronized void start()
+	throws IOException
+    {
+	// a null address passed to getByName() is the loopback address
+	InetAddress bindAddress = (mBindAddress != null ? mBindAddress
+				   : InetAddress.getByName(null));
+
+	mServerSocket = new ServerSocket(mPort, 50, bindAddress);
+	mAcceptThread = new Thread(new Runnable() {
+	    public void run()
+	    {
+		acceptLoop();
+	    }
+	}, "PrinceServer-" + mServerSocket.getLocalPort());
+	mAcceptThread.start();
+    }
+
+    /**
+     * Get the port that the server is listening on.
+     * @return The port, or -1 if the server has not been started.
+     */
+    public int getPort()
+    {
+	return (mServerSocket != null ? mServerSocket.getLocalPort() : -1);
+    }
+
+    /**
+     * Stop listening and close all connections. Conversions in progress are
+     * abandoned.
+     */
+    public void stop()
+	throws IOException
+    {
+	if (mServerSocket != null)
+	{
+	    mServerSocket.close();
+	}
+
+	synchronized (mConnections)
+	{
+	    for (Iterator i = mConnections.iterator(); i.hasNext(); )
+	    {
+		((Socket) i.next()).close();
+	    }
+
+	    mConnections.clear();
+	}
+    }
+
+    private void acceptLoop()
+    {
+	while (true)
+	{
+	    final Socket socket;
+
+	    try
+	    {
+		socket = mServerSocket.accept();
+	    }
+	    catch (IOException e)
+	    {
+		// the server socket has been closed
+		return;
+	    }
+
+	    synchronized (mConnections)
+	    {
+		mConnections.add(socket);
+	    }
+
+	    Thread thread = new Thread(new Runnable() {
+		public void run()
+		{
+		    serve(socket);
+		}
+	    }, "PrinceServer-" + socket.getRemoteSocketAddress());
+	    thread.setDaemon(true);
+	    thread.start();
+	}
+    }
+
+    /**
+     * Handle the requests of one connection until the client closes it.
+     */
+    private void serve(Socket socket)
+    {
+	try
+	{
+	    socket.setTcpNoDelay(true);
+
+	    DataInputStream input = new DataInputStream(
+		new BufferedInputStream(socket.getInputStream()));
+	    DataOutputStream output = new DataOutputStream(
+		new BufferedOutputStream(socket.getOutputStream()));
+
+	    while (true)
+	    {
+		int magic;
+
+		try
+		{
+		    magic = input.readInt();
+		}
+		catch (EOFException e)
+		{
+		    // the client has closed the connection
+		    break;
+		}
+
+		if (magic != MAGIC)
+		{
+		    break;
+		}
+
+		ChunkedInputStream xmlInput = new ChunkedInputStream(input);
+		ChunkedOutputStream pdfOutput = new ChunkedOutputStream(output);
+
+		boolean success = convert(xmlInput, pdfOutput);
+
+		// skip any input that Prince did not read
+		xmlInput.close();
+		pdfOutput.close();
+		output.writeByte(success ? STATUS_SUCCESS : STATUS_FAILURE);
+		output.flush();
+	    }
+	}
+	catch (SocketException e)
+	{
+	    // the connection was reset or the server was stopped
+	}
+	catch (IOException e)
+	{
+	    // the connection is unusable, drop it
+	}
+	finally
+	{
+	    synchronized (mConnections)
+	    {
+		mConnections.remove(socket);
+	    }
+
+	    try
+	    {
+		socket.close();
+	    }
+	    catch (IOException e)
+	    {
+		// ignore errors closing the connection
+	    }
+	}
+    }
+
+    private boolean convert(ChunkedInputStream xmlInput,
+			    ChunkedOutputStream pdfOutput)
+	throws IOException
+    {
+	if (mJobs != null)
+	{
+	    mJobs.acquireUninterruptibly();
+	}
+
+	try
+	{
+	    return mPrince.convert(xmlInput, pdfOutput);
+	}
+	catch (IOException e)
+	{
+	    // Prince failed, for example by exiting before reading all of
+	    // its input; report failure if the connection is still usable
+	    return false;
+	}
+	finally
+	{
+	    if (mJobs != null)
+	    {
+		mJobs.release();
+	    }
+	}
+    }
+
+    /**
+     * Run a server from the command line.
+     * @param args The command line arguments.
+     */
+    public static void main(String[] args)
+	throws Exception
+    {
+	String exePath = "prince";
+	String logFile = null;
+	InetAddress bindAddress = null;
+	int port = 0;
+	int maxJobs = 0;
+
+	for (int i = 0; i < args.length; ++i)
+	{
+	    String arg = args[i];
+	    String value = arg.substring(arg.indexOf('=') + 1);
+
+	    if (arg.startsWith("--prince="))
+	    {
+		exePath = value;
+	    }
+	    else if (arg.startsWith("--log="))
+	    {
+		logFile = value;
+	    }
+	    else if (arg.startsWith("--bind="))
+	    {
+		bindAddress = InetAddress.getByName(value);
+	    }
+	    else if (arg.startsWith("--port="))
+	    {
+		port = Integer.parseInt(value);
+	    }
+	    else if (arg.startsWith("--max-jobs="))
+	    {
+		maxJobs = Integer.parseInt(value);
+	    }
+	    else
+	    {
+		System.err.println(
+		    "usage: java com.princexml.PrinceServer " +
+		    "[--prince=PATH] [--log=FILE] [--bind=ADDRESS] " +
+		    "[--port=N] [--max-jobs=N]\n" +
+		    "The server listens on the loopback interface unless " +
+		    "--bind is given.\nClients are not authenticated, so " +
+		    "only bind to other interfaces on a\ntrusted network.");
+		System.exit(2);
+	    }
+	}
+
+	Prince prince = new Prince(exePath);
+
+	// messages are only written to the log file, see the class comment
+	prince.setLog(logFile);
+
+	PrinceServer server = new PrinceServer(prince, bindAddress, port);
+
+	if (maxJobs > 0)
+	{
+	    server.setMaxJobs(maxJobs);
+	}
+
+	server.start();
+	InetAddress address = server.mServerSocket.getInetAddress();
+
+	System.out.println("listening on " + address.getHostAddress() +
+			   " port " + server.getPort());
+    }
+}
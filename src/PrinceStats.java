@@ -0,0 +1,247 @@
+// Copyright (C) 2026 YesLogic Pty. Ltd.
+// All rights reserved.
+
+package com.princexml;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * PrinceStats totals the resource usage of conversions for each
+ * configuration, that is, for each distinct set of Prince command-line
+ * options such as style sheets and PDF settings. This shows which
+ * configurations are the expensive ones. The same PrinceStats may be shared
+ * by many Prince instances.
+ */
+public class PrinceStats
+{
+    private Map mTotals;
+
+    /**
+     * Constructor for PrinceStats.
+     */
+    public PrinceStats()
+    {
+	mTotals = new HashMap();
+    }
+
+    /**
+     * Add the resource usage of a conversion to the totals for its
+     * configuration.
+     * @param result The result of the conversion.
+     */
+    public synchronized void record(PrinceResult result)
+    {
+	Totals totals = (Totals) mTotals.get(result.getConfigKey());
+
+	if (totals == null)
+	{
+	    totals = new Totals(result.getConfigKey());
+	    mTotals.put(result.getConfigKey(), totals);
+	}
+
+	totals.add(result);
+    }
+
+    /**
+     * Get a snapshot of the totals for each configuration, most expensive
+     * first by CPU time and then by wall time.
+     * @return A list of Totals.
+     */
+    public synchronized List getTotals()
+    {
+	List totals = new ArrayList();
+
+	for (Iterator i = mTotals.values().iterator(); i.hasNext(); )
+	{
+	    totals.add(((Totals) i.next()).copy());
+	}
+
+	Collections.sort(totals, new Comparator() {
+	    public int compare(Object a, Object b)
+	    {
+		Totals ta = (Totals) a;
+		Totals tb = (Totals) b;
+
+		if (ta.mCpuTime != tb.mCpuTime)
+		{
+		    return (ta.mCpuTime > tb.mCpuTime ? -1 : 1);
+		}
+
+		if (ta.mWallTime != tb.mWallTime)
+		{
+		    return (ta.mWallTime > tb.mWallTime ? -1 : 1);
+		}
+
+		return 0;
+	    }
+	});
+
+	return totals;
+    }
+
+    /**
+     * Discard all of the totals.
+     */
+    public synchronized void clear()
+    {
+	mTotals.clear();
+    }
+
+    public String toString()
+    {
+	List totals = getTotals();
+	StringBuffer buf = new StringBuffer();
+
+	for (int i = 0; i < totals.size(); ++i)
+	{
+	    buf.append(totals.get(i));
+	    buf.append('\n');
+	}
+
+	return buf.toString();
+    }
+
+    /**
+     * The resource usage totals of one configuration.
+     */
+    public static class Totals
+    {
+	private String mConfigKey;
+	private long mJobs;
+	private long mFailures;
+	private long mWallTime;
+	private long mCpuTime;
+	private long mMaxPeakMemory;
+	private long mBytesIn;
+	private long mBytesOut;
+
+	Totals(String configKey)
+	{
+	    mConfigKey = configKey;
+	    mJobs = 0;
+	    mFailures = 0;
+	    mWallTime = 0;
+	    mCpuTime = 0;
+	    mMaxPeakMemory = 0;
+	    mBytesIn = 0;
+	    mBytesOut = 0;
+	}
+
+	void add(PrinceResult result)
+	{
+	    ++mJobs;
+
+	    if (!result.isSuccess())
+	    {
+		++mFailures;
+	    }
+
+	    mWallTime += result.getWallTime();
+	    mCpuTime += Math.max(0, result.getCpuTime());
+	    mMaxPeakMemory = Math.max(mMaxPeakMemory, result.getPeakMemory());
+	    mBytesIn += Math.max(0, result.getBytesIn());
+	    mBytesOut += Math.max(0, result.getBytesOut());
+	}
+
+	Totals copy()
+	{
+	    Totals copy = new Totals(mConfigKey);
+
+	    copy.mJobs = mJobs;
+	    copy.mFailures = mFailures;
+	    copy.mWallTime = mWallTime;
+	    copy.mCpuTime = mCpuTime;
+	    copy.mMaxPeakMemory = mMaxPeakMemory;
+	    copy.mBytesIn = mBytesIn;
+	    copy.mBytesOut = mBytesOut;
+
+	    return copy;
+	}
+
+	/**
+	 * Get the configuration that these totals belong to.
+	 * @return The configuration key.
+	 */
+	public String getConfigKey()
+	{
+	    return mConfigKey;
+	}
+
+	/**
+	 * Get the number of conversions.
+	 * @return The number of conversions.
+	 */
+	public long getJobs()
+	{
+	    return mJobs;
+	}
+
+	/**
+	 * Get the number of conversions that failed.
+	 * @return The number of failed conversions.
+	 */
+	public long getFailures()
+	{
+	    return mFailures;
+	}
+
+	/**
+	 * Get the total wall time of the conversions.
+	 * @return The wall time in milliseconds.
+	 */
+	public long getWallTime()
+	{
+	    return mWallTime;
+	}
+
+	/**
+	 * Get the total CPU time of the conversions.
+	 * @return The CPU time in milliseconds.
+	 */
+	public long getCpuTime()
+	{
+	    return mCpuTime;
+	}
+
+	/**
+	 * Get the highest peak memory of any of the conversions.
+	 * @return The peak memory in bytes.
+	 */
+	public long getMaxPeakMemory()
+	{
+	    return mMaxPeakMemory;
+	}
+
+	/**
+	 * Get the total input size of the conversions.
+	 * @return The input size in bytes.
+	 */
+	public long getBytesIn()
+	{
+	    return mBytesIn;
+	}
+
+	/**
+	 * Get the total output size of the conversions.
+	 * @return The output size in bytes.
+	 */
+	public long getBytesOut()
+	{
+	    return mBytesOut;
+	}
+
+	public String toString()
+	{
+	    return mJobs + " jobs (" + mFailures + " failed), cpu " +
+		mCpuTime + " ms, wall " + mWallTime + " ms, peak " +
+		(mMaxPeakMemory / 1024) + " KiB, in " + mBytesIn +
+		" B, out " + mBytesOut + " B: [" + mConfigKey + "]";
+	}
+    }
+}
@@ -0,0 +1,292 @@
+// Copyright (C) 2026 YesLogic Pty. Ltd.
+// All rights reserved.
+
+package com.princexml;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ProcessMonitor periodically samples the resident memory and CPU time of
+ * Prince processes from /proc. A single background thread is shared by
+ * everything that watches processes. On systems without /proc no processes
+ * can be watched.
+ */
+class ProcessMonitor
+{
+    private static final long SAMPLE_INTERVAL = 100;
+
+    // Linux reports /proc times in units of USER_HZ, which is 100
+    private static final long MILLIS_PER_TICK = 10;
+
+    private static ProcessMonitor sInstance = null;
+
+    private List mWatched;
+    private Thread mThread;
+
+    private ProcessMonitor()
+    {
+	mWatched = new ArrayList();
+	mThread = new Thread(new Runnable() {
+	    public void run()
+	    {
+		sampleLoop();
+	    }
+	}, "PrinceProcessMonitor");
+	mThread.setDaemon(true);
+	mThread.start();
+    }
+
+    /**
+     * Get the shared ProcessMonitor, starting its thread if necessary.
+     * @return The ProcessMonitor.
+     */
+    static synchronized ProcessMonitor getInstance()
+    {
+	if (sInstance == null)
+	{
+	    sInstance = new ProcessMonitor();
+	}
+
+	return sInstance;
+    }
+
+    /**
+     * Start sampling a process.
+     * @param process The process to watch.
+     * @return The Usage that will be updated with each sample, or null if
+     * the process cannot be watched on this system.
+     */
+    Usage watch(Process process)
+    {
+	int pid = Util.getProcessId(process);
+
+	if (pid <= 0)
+	{
+	    return null;
+	}
+
+	Usage usage = new Usage(pid);
+
+	if (!usage.sample())
+	{
+	    return null;
+	}
+
+	synchronized (mWatched)
+	{
+	    mWatched.add(usage);
+	}
+
+	return usage;
+    }
+
+    /**
+     * Stop sampling a process.
+     * @param usage The Usage returned by <code>watch()</code>.
+     */
+    void unwatch(Usage usage)
+    {
+	synchronized (mWatched)
+	{
+	    mWatched.remove(usage);
+	}
+    }
+
+    private void sampleLoop()
+    {
+	while (true)
+	{
+	    Object[] watched;
+
+	    synchronized (mWatched)
+	    {
+		watched = mWatched.toArray();
+	    }
+
+	    for (int i = 0; i < watched.length; ++i)
+	    {
+		((Usage) watched[i]).sample();
+	    }
+
+	    try
+	    {
+		Thread.sleep(SAMPLE_INTERVAL);
+	    }
+	    catch (InterruptedException e)
+	    {
+		return;
+	    }
+	}
+    }
+
+    /**
+     * The most recently sampled resource usage of a process.
+     */
+    static class Usage
+    {
+	private int mPid;
+	private volatile long mRss;
+	private volatile long mPeakRss;
+	private volatile long mCpuTicks;
+
+	Usage(int pid)
+	{
+	    mPid = pid;
+	    mRss = 0;
+	    mPeakRss = 0;
+	    mCpuTicks = 0;
+	}
+
+	/**
+	 * Get the current resident memory of the process.
+	 * @return The resident memory in bytes.
+	 */
+	long getRss()
+	{
+	    return mRss;
+	}
+
+	/**
+	 * Get the highest resident memory of the process so far.
+	 * @return The peak resident memory in bytes.
+	 */
+	long getPeakRss()
+	{
+	    return mPeakRss;
+	}
+
+	/**
+	 * Get the CPU time used by the process and its finished children.
+	 * @return The CPU time in milliseconds.
+	 */
+	long getCpuTime()
+	{
+	    return mCpuTicks * MILLIS_PER_TICK;
+	}
+
+	/**
+	 * Read the memory use of the process from /proc/[pid]/status and its
+	 * CPU time from /proc/[pid]/stat. A process that has exited but has
+	 * not yet been reaped keeps its last memory sample.
+	 * @return True if the process could be sampled.
+	 */
+	boolean sample()
+	{
+	    if (!sampleMemory())
+	    {
+		return false;
+	    }
+
+	    sampleCpu();
+
+	    return true;
+	}
+
+	private boolean sampleMemory()
+	{
+	    try
+	    {
+		BufferedReader reader = new BufferedReader(
+		    new FileReader("/proc/" + mPid + "/status"));
+
+		try
+		{
+		    String line;
+
+		    while ((line = reader.readLine()) != null)
+		    {
+			if (line.startsWith("VmRSS:"))
+			{
+			    mRss = parseKilobytes(line);
+			}
+			else if (line.startsWith("VmHWM:"))
+			{
+			    mPeakRss = Math.max(mPeakRss, parseKilobytes(line));
+			}
+		    }
+		}
+		finally
+		{
+		    reader.close();
+		}
+
+		mPeakRss = Math.max(mPeakRss, mRss);
+
+		return true;
+	    }
+	    catch (IOException e)
+	    {
+		// the process has exited or /proc is not available
+		return false;
+	    }
+	}
+
+	private void sampleCpu()
+	{
+	    try
+	    {
+		BufferedReader reader = new BufferedReader(
+		    new FileReader("/proc/" + mPid + "/stat"));
+		String line;
+
+		try
+		{
+		    line = reader.readLine();
+		}
+		finally
+		{
+		    reader.close();
+		}
+
+		// skip past the command name, which may contain spaces
+		String[] fields =
+		    line.substring(line.lastIndexOf(')') + 2).split(" ");
+
+		// utime, stime, cutime and cstime are fields 14 to 17
+		long ticks = Long.parseLong(fields[11]) +
+		    Long.parseLong(fields[12]) +
+		    Long.parseLong(fields[13]) +
+		    Long.parseLong(fields[14]);
+
+		mCpuTicks = Math.max(mCpuTicks, ticks);
+	    }
+	    catch (IOException e)
+	    {
+		// the process has exited, keep the last sample
+	    }
+	    catch (RuntimeException e)
+	    {
+		// ignore malformed stat lines
+	    }
+	}
+
+	/**
+	 * Parse a line such as "VmRSS:     1234 kB".
+	 * @return The value in bytes.
+	 */
+	private static long parseKilobytes(String line)
+	{
+	    String value = line.substring(line.indexOf(':') + 1).trim();
+	    int space = value.indexOf(' ');
+
+	    if (space != -1)
+	    {
+		value = value.substring(0, space);
+	    }
+
+	    try
+	    {
+		return Long.parseLong(value) * 1024;
+	    }
+	    catch (NumberFormatException e)
+	    {
+		return 0;
+	    }
+	}
+    }
+}
@@ -0,0 +1,391 @@
+// Copyright (C) 2026 YesLogic Pty. Ltd.
+// All rights reserved.
+
+package com.princexml;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+
+import java.lang.management.ManagementFactory;
+
+import java.security.SecureRandom;
+
+/**
+ * StagingArea holds the temporary files used to pass large documents to
+ * Prince by filename instead of through a pipe. Files are written to a
+ * private subdirectory of a memory-backed file system where one is
+ * available, and the total size of the staged files is limited. A document
+ * that would exceed the limit is piped to Prince instead.
+ * <p>
+ * Each StagingArea uses its own subdirectory, named after the process ID
+ * of the JVM and a random number. The subdirectory must not already exist
+ * and is only accessible to the user running the JVM, so other users
+ * cannot read or replace the staged documents. Subdirectories left behind
+ * by JVMs that are no longer running are removed when a StagingArea is
+ * created.
+ */
+public class StagingArea
+{
+    private static final String DIR_PREFIX = "prince-staging-";
+    private static final int BUFSIZE = 65536;
+
+    private static final int CREATE_ATTEMPTS = 10;
+
+    private static StagingArea sDefault = null;
+    private static SecureRandom sRandom = new SecureRandom();
+
+    private File mParentDir;
+    private File mDir;
+    private long mMaxBytes;
+    private long mThreshold;
+    private long mUsedBytes;
+    private int mLastFile;
+
+    /**
+     * Constructor for StagingArea.
+     * @param parentDir The directory in which the staging directory is
+     * created, such as /dev/shm.
+     * @param maxBytes The maximum total size of the staged files.
+     * @param threshold The size at which documents are staged rather than
+     * piped.
+     */
+    public StagingArea(File parentDir, long maxBytes, long threshold)
+    {
+	removeStaleDirectories(parentDir);
+
+	mParentDir = parentDir;
+	mDir = null;
+	mMaxBytes = maxBytes;
+	mThreshold = threshold;
+	mUsedBytes = 0;
+	mLastFile = 0;
+    }
+
+    /**
+     * Get the StagingArea used by Prince instances that have not been given
+     * one. It is created in /dev/shm if that is a writable directory, or
+     * else in the system temporary directory, and is limited to 64MB with a
+     * threshold of 1MB.
+     * @return The default StagingArea.
+     */
+    public static synchronized StagingArea getDefault()
+    {
+	if (sDefault == null)
+	{
+	    File parentDir = new File("/dev/shm");
+
+	    if (!parentDir.isDirectory() || !parentDir.canWrite())
+	    {
+		parentDir = new File(System.getProperty("java.io.tmpdir"));
+	    }
+
+	    sDefault = new StagingArea(parentDir, 64L << 20, 1L << 20);
+	}
+
+	return sDefault;
+    }
+
+    /**
+     * Get the directory that staged files are written to.
+     * @return The staging directory, or null if nothing has been staged.
+     */
+    public synchronized File getDirectory()
+    {
+	return mDir;
+    }
+
+    /**
+     * Get the size at which documents are staged rather than piped.
+     * @return The threshold in bytes.
+     */
+    public long getThreshold()
+    {
+	return mThreshold;
+    }
+
+    /**
+     * Get the total size of the files currently staged.
+     * @return The size in bytes.
+     */
+    public synchronized long getUsedBytes()
+    {
+	return mUsedBytes;
+    }
+
+    /**
+     * Write a document to a staged file. If the document does not fit
+     * within the size limit, the data written so far is kept so that the
+     * document can be piped instead.
+     * @param prefix The start of the document, which has already been read
+     * from the InputStream.
+     * @param rest The remainder of the document.
+     * @param suffix The filename extension of the staged file, including
+     * the dot.
+     * @return The staged document, which must be deleted after use.
+     */
+    Entry stage(byte[] prefix, InputStream rest, String suffix)
+	throws IOException
+    {
+	File dir = getStagingDirectory();
+	Entry entry = new Entry(new File(dir, nextFileName() + suffix));
+	OutputStream output = new FileOutputStream(entry.mFile);
+
+	try
+	{
+	    if (!entry.write(output, prefix, prefix.length))
+	    {
+		return entry;
+	    }
+
+	    byte[] buf = new byte[BUFSIZE];
+	    int bytesRead;
+
+	    while ((bytesRead = rest.read(buf, 0, BUFSIZE)) != -1)
+	    {
+		if (!entry.write(output, buf, bytesRead))
+		{
+		    return entry;
+		}
+	    }
+
+	    entry.mComplete = true;
+
+	    return entry;
+	}
+	catch (IOException e)
+	{
+	    entry.delete();
+	    throw e;
+	}
+	finally
+	{
+	    output.close();
+	}
+    }
+
+    private synchronized boolean reserve(long bytes)
+    {
+	if (mUsedBytes + bytes > mMaxBytes)
+	{
+	    return false;
+	}
+
+	mUsedBytes += bytes;
+
+	return true;
+    }
+
+    private synchronized void release(long bytes)
+    {
+	mUsedBytes -= bytes;
+    }
+
+    private synchronized String nextFileName()
+    {
+	return "doc-" + (++mLastFile);
+    }
+
+    /**
+     * Get the staging directory, creating it if it does not exist. A new
+     * directory with a random name is created, and it is an error for it to
+     * exist already, so that a directory created by another user in a
+     * shared parent directory such as /dev/shm is never used.
+     */
+    private synchronized File getStagingDirectory()
+	throws IOException
+    {
+	if (mDir != null && mDir.isDirectory())
+	{
+	    return mDir;
+	}
+
+	for (int i = 0; i < CREATE_ATTEMPTS; ++i)
+	{
+	    File dir = new File(mParentDir, DIR_PREFIX + getJvmId() + "-" +
+				Long.toHexString(sRandom.nextLong()));
+
+	    // mkdir() fails if the directory already exists
+	    if (!dir.mkdir())
+	    {
+		continue;
+	    }
+
+	    // make the directory private to the user running the JVM
+	    try
+	    {
+		Util.changeMode(dir, "700");
+	    }
+	    catch (IOException e)
+	    {
+		dir.delete();
+		throw new IOException(
+		    "cannot restrict access to staging directory: " + dir);
+	    }
+
+	    dir.deleteOnExit();
+	    mDir = dir;
+
+	    return mDir;
+	}
+
+	throw new IOException("cannot create staging directory in " +
+			      mParentDir);
+    }
+
+    /**
+     * Get the process ID of the JVM, which is the part of the runtime name
+     * before the '@'.
+     */
+    private static String getJvmId()
+    {
+	String name = ManagementFactory.getRuntimeMXBean().getName();
+	int at = name.indexOf('@');
+
+	return (at > 0 ? name.substring(0, at) : "0");
+    }
+
+    /**
+     * Remove staging directories that belong to JVMs that are no longer
+     * running. This relies on /proc, so nothing is removed on systems
+     * without it.
+     */
+    private static void removeStaleDirectories(File parentDir)
+    {
+	if (!new File("/proc/self").isDirectory())
+	{
+	    return;
+	}
+
+	File[] dirs = parentDir.listFiles();
+
+	if (dirs == null)
+	{
+	    return;
+	}
+
+	for (int i = 0; i < dirs.length; ++i)
+	{
+	    String name = dirs[i].getName();
+
+	    if (!name.startsWith(DIR_PREFIX) || !dirs[i].isDirectory())
+	    {
+		continue;
+	    }
+
+	    String pid = name.substring(DIR_PREFIX.length());
+	    int dash = pid.indexOf('-');
+
+	    if (dash != -1)
+	    {
+		pid = pid.substring(0, dash);
+	    }
+
+	    if (!new File("/proc/" + pid).exists())
+	    {
+		File[] files = dirs[i].listFiles();
+
+		for (int j = 0; files != null && j < files.length; ++j)
+		{
+		    files[j].delete();
+		}
+
+		dirs[i].delete();
+	    }
+	}
+    }
+
+    /**
+     * A document written to the staging area.
+     */
+    class Entry
+    {
+	private File mFile;
+	private long mSize;
+	private boolean mComplete;
+	private byte[] mPending;
+
+	Entry(File file)
+	{
+	    mFile = file;
+	    mSize = 0;
+	    mComplete = false;
+	    mPending = new byte[0];
+	}
+
+	/**
+	 * Check whether the whole document was staged.
+	 * @return True if the staged file contains the whole document.
+	 */
+	boolean isComplete()
+	{
+	    return mComplete;
+	}
+
+	/**
+	 * Get the staged file.
+	 * @return The staged file.
+	 */
+	File getFile()
+	{
+	    return mFile;
+	}
+
+	/**
+	 * Get the number of bytes staged.
+	 * @return The size of the staged file.
+	 */
+	long getSize()
+	{
+	    return mSize;
+	}
+
+	/**
+	 * Open an InputStream that replays the staged part of the document
+	 * followed by the rest of it, for a document that did not fit.
+	 * @param rest The remainder of the document.
+	 * @return The InputStream.
+	 */
+	InputStream openReplay(InputStream rest)
+	    throws IOException
+	{
+	    InputStream unstaged = new SequenceInputStream(
+		new ByteArrayInputStream(mPending), rest);
+
+	    return new SequenceInputStream(new FileInputStream(mFile), unstaged);
+	}
+
+	/**
+	 * Delete the staged file and release its space.
+	 */
+	void delete()
+	{
+	    mFile.delete();
+	    release(mSize);
+	    mSize = 0;
+	}
+
+	private boolean write(OutputStream output, byte[] buf, int len)
+	    throws IOException
+	{
+	    if (!reserve(len))
+	    {
+		// keep the data that has already been read but not staged
+		mPending = new byte[len];
+		System.arraycopy(buf, 0, mPending, 0, len);
+
+		return false;
+	    }
+
+	    mSize += len;
+	    output.write(buf, 0, len);
+
+	    return true;
+	}
+    }
+}
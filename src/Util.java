@@ -3,10 +3,16 @@
 
 package com.princexml;
 
+import java.io.File;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.IOException;
 import java.io.OutputStream;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -28,6 +34,82 @@ public class Util
 	return Runtime.getRuntime().exec(cmdlineArray);
     }
 
+    /**
+     * Change the permissions of a file by running chmod, as java.io.File can
+     * only do so from Java 6.
+     * @param file The file.
+     * @param mode The mode, such as "700".
+     * @throws IOException if chmod could not be run or failed.
+     */
+    static void changeMode(File file, String mode)
+	throws IOException
+    {
+	List cmdline = new ArrayList();
+
+	cmdline.add("chmod");
+	cmdline.add(mode);
+	cmdline.add(file.getPath());
+
+	Process process = invokeProcess(cmdline);
+	int status;
+
+	try
+	{
+	    process.getOutputStream().close();
+	    status = process.waitFor();
+	}
+	catch (InterruptedException e)
+	{
+	    process.destroy();
+	    Thread.currentThread().interrupt();
+	    throw new InterruptedIOException("interrupted running chmod");
+	}
+	finally
+	{
+	    process.getInputStream().close();
+	    process.getErrorStream().close();
+	}
+
+	if (status != 0)
+	{
+	    throw new IOException("chmod " + mode + " failed: " + file);
+	}
+    }
+
+    /**
+     * Get the operating system process ID of a Process. This uses
+     * Process.pid() where the JVM provides it, or else the private pid field
+     * of the UNIX Process implementation.
+     * @param process The Process.
+     * @return The process ID, or -1 if it cannot be determined.
+     */
+    public static int getProcessId(Process process)
+    {
+	try
+	{
+	    Method method = Process.class.getMethod("pid", new Class[0]);
+	    Object pid = method.invoke(process, new Object[0]);
+
+	    return ((Number) pid).intValue();
+	}
+	catch (Exception e)
+	{
+	    // Process.pid() is not available before Java 9
+	}
+
+	try
+	{
+	    Field field = process.getClass().getDeclaredField("pid");
+	    field.setAccessible(true);
+
+	    return field.getInt(process);
+	}
+	catch (Exception e)
+	{
+	    return -1;
+	}
+    }
+
     /**
      * Read all the available data from an InputStream and write it to an
      * OutputStream. The data is copied in chunks of 4096 bytes. There is no
@@ -38,10 +120,25 @@ public class Util
      */
     public static void copyInputToOutput(InputStream input, OutputStream output)
 	throws IOException
+    {
+	copyAndCount(input, output);
+    }
+
+    /**
+     * Read all the available data from an InputStream and write it to an
+     * OutputStream, as for <code>copyInputToOutput()</code>, and return the
+     * number of bytes copied.
+     * @param input The InputStream to read data from.
+     * @param output The OutputStream to write data to.
+     * @return The number of bytes copied.
+     */
+    public static long copyAndCount(InputStream input, OutputStream output)
+	throws IOException
     {
 	final int BUFSIZE = 4096;
         byte buf[] = new byte[BUFSIZE];
 	int bytesRead;
+	long total = 0;
 	
 	do
 	{
@@ -50,9 +147,12 @@ public class Util
             if (bytesRead > 0)
 	    {
                 output.write(buf, 0, bytesRead);
+		total += bytesRead;
 	    }
         }
 	while (bytesRead != -1);
+
+	return total;
     }
 }
 